@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link Utf16BinaryEncoding} with base64, the usual way of storing bytes as strings.
+ *
+ * <p>The encoded sizes, in UTF-16 code units (which is what storage quotas count), are reported as
+ * the secondary results of the encoding benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryEncodingBenchmark {
+
+  /** The encoded sizes of the benchmarked bytes, reported next to the timings. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedSize {
+    public long denseCodeUnits;
+    public long base64CodeUnits;
+
+    @Setup(Level.Iteration)
+    public void setUp(BinaryEncodingBenchmark benchmark) {
+      denseCodeUnits = benchmark.dense.length();
+      base64CodeUnits = benchmark.base64.length();
+    }
+  }
+
+  @Param({"1024", "65536", "1048576"})
+  public int size;
+
+  private byte[] bytes;
+  private String dense;
+  private String base64;
+
+  @Setup
+  public void setUp() {
+    bytes = new byte[size];
+    new Random(42).nextBytes(bytes);
+    dense = Utf16BinaryEncoding.encode(bytes);
+    base64 = Base64.getEncoder().encodeToString(bytes);
+  }
+
+  @Benchmark
+  public String encodeDense(EncodedSize encodedSize) {
+    return Utf16BinaryEncoding.encode(bytes);
+  }
+
+  @Benchmark
+  public String encodeBase64(EncodedSize encodedSize) {
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+  @Benchmark
+  public byte[] decodeDense() {
+    return Utf16BinaryEncoding.decode(dense);
+  }
+
+  @Benchmark
+  public byte[] decodeBase64() {
+    return Base64.getDecoder().decode(base64);
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StorageArea} kept in JVM memory.
+ *
+ * <p>Keys are kept in an indexed list so that {@link #key(int)} is constant time, like in browser
+ * implementations. As allowed by the spec, removing a key moves the last key into its slot.
+ */
+class InMemoryStorageArea implements StorageArea {
+
+  private final List<String> keys = new ArrayList<String>();
+  private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+  private final Map<String, String> values = new HashMap<String, String>();
+
+  @Override
+  public void clear() {
+    keys.clear();
+    indexes.clear();
+    values.clear();
+  }
+
+  @Override
+  public String getItem(String key) {
+    return values.get(key);
+  }
+
+  @Override
+  public int getLength() {
+    return keys.size();
+  }
+
+  @Override
+  public String key(int index) {
+    return index >= 0 && index < keys.size() ? keys.get(index) : null;
+  }
+
+  @Override
+  public void removeItem(String key) {
+    Integer index = indexes.remove(key);
+    if (index == null) {
+      return;
+    }
+    values.remove(key);
+    String last = keys.remove(keys.size() - 1);
+    if (index < keys.size()) {
+      keys.set(index, last);
+      indexes.put(last, index);
+    }
+  }
+
+  @Override
+  public void setItem(String key, String data) {
+    if (values.put(key, data) == null) {
+      indexes.put(key, keys.size());
+      keys.add(key);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Gives the benchmarks access to {@link Storage} instances backed by {@link InMemoryStorageArea}s.
+ */
+final class JvmStorages {
+
+  static {
+    StorageImpl.setStorageArea(StorageImpl.LOCAL_STORAGE, new InMemoryStorageArea());
+    StorageImpl.setStorageArea(StorageImpl.SESSION_STORAGE, new InMemoryStorageArea());
+  }
+
+  private JvmStorages() {}
+
+  /** Returns the JVM local storage, emptied. */
+  static Storage local() {
+    Storage storage = Storage.getLocalStorageIfSupported();
+    storage.clear();
+    return storage;
+  }
+
+  /** Fills the storage with {@code size} entries named {@code key0 .. key<size - 1>}. */
+  static void fill(Storage storage, int size) {
+    for (int i = 0; i < size; i++) {
+      storage.setItem("key" + i, "value" + i);
+    }
+  }
+}
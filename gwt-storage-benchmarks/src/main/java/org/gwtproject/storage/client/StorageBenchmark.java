@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of the single-item operations of {@link Storage}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+  @Param({"10", "1000"})
+  public int size;
+
+  private Storage storage;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    storage = JvmStorages.local();
+    JvmStorages.fill(storage, size);
+  }
+
+  @Benchmark
+  public String getItem() {
+    return storage.getItem("key" + (next++ % size));
+  }
+
+  @Benchmark
+  public String getMissingItem() {
+    return storage.getItem("missing");
+  }
+
+  @Benchmark
+  public void setItem() {
+    int i = next++ % size;
+    storage.setItem("key" + i, "value" + i);
+  }
+
+  @Benchmark
+  public void removeAndSetItem() {
+    int i = next++ % size;
+    storage.removeItem("key" + i);
+    storage.setItem("key" + i, "value" + i);
+  }
+
+  @Benchmark
+  public String key() {
+    return storage.key(next++ % size);
+  }
+}
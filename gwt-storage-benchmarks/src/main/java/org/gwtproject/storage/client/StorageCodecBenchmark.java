@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the codecs generated for {@link Storable} classes, and of {@link StorageObjectMap} on top
+ * of them.
+ *
+ * <p>The size of an encoded value, in UTF-16 code units, is reported as the secondary result of
+ * {@link #encode(EncodedSize)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageCodecBenchmark {
+
+  /** A typical small record. */
+  @Storable
+  public static class Order {
+    enum Status {
+      OPEN,
+      SHIPPED
+    }
+
+    long id;
+    String customer;
+    double total;
+    boolean paid;
+    Status status;
+    List<String> items;
+  }
+
+  /** The encoded size of the benchmarked record, reported next to the timings. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedSize {
+    public long codeUnits;
+
+    @Setup(Level.Iteration)
+    public void setUp(StorageCodecBenchmark benchmark) {
+      codeUnits = benchmark.encoded.length();
+    }
+  }
+
+  private final StorageCodec<Order> codec = StorageCodecBenchmark_Order_StorageCodec.INSTANCE;
+  private Order order;
+  private String encoded;
+  private StorageObjectMap<Order> map;
+
+  @Setup
+  public void setUp() {
+    order = new Order();
+    order.id = 1234567890123L;
+    order.customer = "Jane \"JD\" Doe";
+    order.total = 149.95;
+    order.paid = true;
+    order.status = Order.Status.SHIPPED;
+    order.items = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      order.items.add("item" + i);
+    }
+    encoded = codec.encode(order);
+
+    Storage storage = JvmStorages.local();
+    storage.clear();
+    map = new StorageObjectMap<Order>(storage, "orders", codec);
+    map.put("order", order);
+  }
+
+  @Benchmark
+  public String encode(EncodedSize encodedSize) {
+    return codec.encode(order);
+  }
+
+  @Benchmark
+  public Order decode() {
+    return codec.decode(encoded);
+  }
+
+  @Benchmark
+  public Order mapGet() {
+    return map.get("order");
+  }
+
+  @Benchmark
+  public void mapPutAll() {
+    map.putAll(Collections.singletonMap("order", order));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Cost of {@link StorageCollection} operations, compared to storing one record per key. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageCollectionBenchmark {
+
+  @Param({"1000", "20000"})
+  public int size;
+
+  private Storage storage;
+  private StorageCollection collection;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    storage = JvmStorages.local();
+    JvmStorages.fill(storage, size);
+    collection = new StorageCollection(storage, "records");
+    for (int i = 0; i < size; i++) {
+      collection.put("id" + i, "value" + i);
+    }
+    collection.flush();
+  }
+
+  @Benchmark
+  public void updateRecord() {
+    collection.put("id" + (next++ % size), "changed");
+    collection.flush();
+  }
+
+  @Benchmark
+  public void updateKey() {
+    storage.setItem("key" + (next++ % size), "changed");
+  }
+
+  @Benchmark
+  public String readRecord() {
+    return collection.get("id" + (next++ % size));
+  }
+
+  @Benchmark
+  public String readKey() {
+    return storage.getItem("key" + (next++ % size));
+  }
+
+  @Benchmark
+  public int openCollection() {
+    return new StorageCollection(storage, "records").size();
+  }
+
+  @Benchmark
+  public void enumerateKeys(Blackhole blackhole) {
+    for (int i = 0; i < storage.getLength(); i++) {
+      blackhole.consume(storage.key(i));
+    }
+  }
+}
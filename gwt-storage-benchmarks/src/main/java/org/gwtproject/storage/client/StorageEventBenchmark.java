@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of dispatching a storage event to a varying number of {@link StorageEvent.Handler}s.
+ *
+ * <p>{@link StorageEvent} is a native browser type which cannot be instantiated on the JVM, so the
+ * handlers receive a <code>null</code> event: this measures the dispatch loop of {@link
+ * StorageImpl#handleStorageEvent(StorageEvent)} itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageEventBenchmark {
+
+  @Param({"0", "1", "100"})
+  public int handlers;
+
+  private final StorageEvent.Handler[] registered = new StorageEvent.Handler[100];
+
+  @Setup
+  public void setUp(final Blackhole blackhole) {
+    JvmStorages.local();
+    for (int i = 0; i < handlers; i++) {
+      registered[i] =
+          new StorageEvent.Handler() {
+            @Override
+            public void onStorageChange(StorageEvent event) {
+              blackhole.consume(event);
+            }
+          };
+      Storage.addStorageEventHandler(registered[i]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (int i = 0; i < handlers; i++) {
+      Storage.removeStorageEventHandler(registered[i]);
+    }
+  }
+
+  @Benchmark
+  public void dispatch() {
+    StorageImpl.handleStorageEvent(null);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Cost of the whole-map operations of {@link StorageMap} at varying sizes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageMapBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int size;
+
+  private StorageMap map;
+
+  @Setup
+  public void setUp() {
+    Storage storage = JvmStorages.local();
+    JvmStorages.fill(storage, size);
+    map = new StorageMap(storage);
+  }
+
+  @Benchmark
+  public void iterateEntries(Blackhole blackhole) {
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      blackhole.consume(entry.getKey());
+      blackhole.consume(entry.getValue());
+    }
+  }
+
+  @Benchmark
+  public void iterateKeys(Blackhole blackhole) {
+    for (String key : map.keySet()) {
+      blackhole.consume(key);
+    }
+  }
+
+  @Benchmark
+  public boolean containsValueMissing() {
+    return map.containsValue("missing");
+  }
+
+  @Benchmark
+  public boolean containsValueLast() {
+    return map.containsValue("value" + (size - 1));
+  }
+
+  @Benchmark
+  public boolean containsKey() {
+    return map.containsKey("key0");
+  }
+
+  @Benchmark
+  public long streamValues() {
+    return map.values().stream().mapToLong(String::length).sum();
+  }
+
+  @Benchmark
+  public long parallelStreamValues() {
+    return map.values().parallelStream().mapToLong(String::length).sum();
+  }
+}
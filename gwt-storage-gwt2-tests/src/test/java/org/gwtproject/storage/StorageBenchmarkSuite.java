@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage;
+
+import com.google.gwt.junit.tools.GWTTestSuite;
+import junit.framework.Test;
+import org.gwtproject.storage.client.StorageBenchmarkTest;
+
+/** Suite for the Storage benchmarks, only run with the <code>benchmarks</code> profile. */
+public class StorageBenchmarkSuite {
+  public static Test suite() {
+    GWTTestSuite suite = new GWTTestSuite("Storage Benchmarks");
+
+    suite.addTestSuite(StorageBenchmarkTest.class);
+
+    return suite;
+  }
+}
@@ -18,10 +18,26 @@ package org.gwtproject.storage;
 
 import com.google.gwt.junit.tools.GWTTestSuite;
 import junit.framework.Test;
+import org.gwtproject.storage.client.ChunkedStorageTest;
+import org.gwtproject.storage.client.LatencyHistogramTest;
 import org.gwtproject.storage.client.LocalStorageMapTest;
 import org.gwtproject.storage.client.LocalStorageTest;
+import org.gwtproject.storage.client.MigratingStorageTest;
+import org.gwtproject.storage.client.ReplicatedStorageMapTest;
 import org.gwtproject.storage.client.SessionStorageMapTest;
 import org.gwtproject.storage.client.SessionStorageTest;
+import org.gwtproject.storage.client.ShardedStorageMapTest;
+import org.gwtproject.storage.client.SortedStorageMapTest;
+import org.gwtproject.storage.client.StorageCollectionTest;
+import org.gwtproject.storage.client.StorageIndexTest;
+import org.gwtproject.storage.client.StorageJournalTest;
+import org.gwtproject.storage.client.StorageLeaderElectionTest;
+import org.gwtproject.storage.client.StorageMessageBusTest;
+import org.gwtproject.storage.client.StorageMetricsTest;
+import org.gwtproject.storage.client.StorageObjectMapTest;
+import org.gwtproject.storage.client.StorageQueryTest;
+import org.gwtproject.storage.client.StorageSyncTest;
+import org.gwtproject.storage.client.Utf16BinaryEncodingTest;
 
 /** Suite for all Storage tests. */
 public class StorageSuite {
@@ -32,6 +48,22 @@ public class StorageSuite {
     suite.addTestSuite(SessionStorageTest.class);
     suite.addTestSuite(LocalStorageMapTest.class);
     suite.addTestSuite(SessionStorageMapTest.class);
+    suite.addTestSuite(LatencyHistogramTest.class);
+    suite.addTestSuite(ChunkedStorageTest.class);
+    suite.addTestSuite(Utf16BinaryEncodingTest.class);
+    suite.addTestSuite(StorageObjectMapTest.class);
+    suite.addTestSuite(MigratingStorageTest.class);
+    suite.addTestSuite(StorageCollectionTest.class);
+    suite.addTestSuite(ShardedStorageMapTest.class);
+    suite.addTestSuite(SortedStorageMapTest.class);
+    suite.addTestSuite(StorageQueryTest.class);
+    suite.addTestSuite(StorageIndexTest.class);
+    suite.addTestSuite(StorageJournalTest.class);
+    suite.addTestSuite(StorageSyncTest.class);
+    suite.addTestSuite(StorageLeaderElectionTest.class);
+    suite.addTestSuite(StorageMessageBusTest.class);
+    suite.addTestSuite(ReplicatedStorageMapTest.class);
+    suite.addTestSuite(StorageMetricsTest.class);
 
     return suite;
   }
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Map;
+
+/** Tests {@link ShardedStorageMap}. */
+public class ShardedStorageMapTest extends MapInterfaceTest<String, String> {
+  private Storage storage;
+
+  public ShardedStorageMapTest() {
+    super(false, false, true, true, true);
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  @Override
+  protected String getKeyNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingKey";
+  }
+
+  @Override
+  protected String getValueNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingValue";
+  }
+
+  @Override
+  protected Map<String, String> makeEmptyMap() throws UnsupportedOperationException {
+    if (storage == null) {
+      throw new UnsupportedOperationException(
+          "ShardedStorageMap not supported because Storage is not supported.");
+    }
+
+    storage.clear();
+
+    return new ShardedStorageMap(storage, "map", 4);
+  }
+
+  @Override
+  protected Map<String, String> makePopulatedMap() throws UnsupportedOperationException {
+    Map<String, String> map = makeEmptyMap();
+    map.put("one", "January");
+    map.put("two", "February");
+    map.put("three", "March");
+    map.put("four", "April");
+    map.put("five", "May");
+    return map;
+  }
+
+  public void testBoundedKeyCount() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ShardedStorageMap map = new ShardedStorageMap(storage, "map", 4);
+    for (int i = 0; i < 100; i++) {
+      map.put("key" + i, "value" + i);
+    }
+    map.flush();
+    // 4 buckets and the header
+    assertEquals(5, storage.getLength());
+
+    ShardedStorageMap reopened = new ShardedStorageMap(storage, "map", 16);
+    assertEquals(4, reopened.getBucketCount());
+    assertEquals(100, reopened.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value" + i, reopened.get("key" + i));
+    }
+  }
+
+  public void testSizeFromHeader() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ShardedStorageMap map = new ShardedStorageMap(storage, "map", 4);
+    for (int i = 0; i < 10; i++) {
+      map.put("key" + i, "value" + i);
+    }
+    map.flush();
+    for (int i = 0; i < 4; i++) {
+      storage.removeItem("map\u001F" + i);
+    }
+    // the buckets are gone, but the size does not need them
+    assertEquals(10, new ShardedStorageMap(storage, "map", 4).size());
+  }
+
+  public void testSizeAcrossWindows() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    // maps standing for two windows, adding keys of different buckets at the same time
+    ShardedStorageMap first = new ShardedStorageMap(storage, "map", 4);
+    ShardedStorageMap second = new ShardedStorageMap(storage, "map", 4);
+    first.put("a", "1");
+    second.put("b", "2");
+    second.put("f", "3");
+    first.flush();
+    second.flush();
+    assertEquals(3, new ShardedStorageMap(storage, "map", 4).size());
+
+    // a window which did not read a bucket picks up its count when writing the header
+    first.put("c", "4");
+    first.flush();
+    assertEquals(4, first.size());
+    assertEquals(4, new ShardedStorageMap(storage, "map", 4).size());
+
+    // a lost count is corrected when its bucket is read
+    storage.setItem("map\u001Fh", "[4,0,0,0,0]");
+    ShardedStorageMap reopened = new ShardedStorageMap(storage, "map", 4);
+    assertEquals(0, reopened.size());
+    assertEquals("1", reopened.get("a"));
+    assertEquals(1, reopened.size());
+    reopened.flush();
+    assertEquals(1, new ShardedStorageMap(storage, "map", 4).size());
+  }
+
+  public void testOnlyChangedBucketIsWritten() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ShardedStorageMap map = new ShardedStorageMap(storage, "map", 4);
+    for (int i = 0; i < 20; i++) {
+      map.put("key" + i, "value" + i);
+    }
+    map.flush();
+    for (int i = 0; i < 4; i++) {
+      storage.setItem("map\u001F" + i, storage.getItem("map\u001F" + i) + " ");
+    }
+
+    map.put("key0", "changed");
+    map.flush();
+    int unchanged = 0;
+    for (int i = 0; i < 4; i++) {
+      if (storage.getItem("map\u001F" + i).endsWith(" ")) {
+        unchanged++;
+      }
+    }
+    assertEquals(3, unchanged);
+  }
+}
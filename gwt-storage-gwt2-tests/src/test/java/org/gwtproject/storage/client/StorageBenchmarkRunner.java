@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import elemental2.dom.DomGlobal;
+import java.util.ArrayList;
+import java.util.List;
+import jsinterop.base.Js;
+import jsinterop.base.JsPropertyMap;
+
+/**
+ * Runs timed loops in the browser and collects the results as a machine-readable JSON report.
+ *
+ * <p>Timings use <code>performance.now()</code>. Allocation is estimated from the heap growth
+ * reported by the non-standard <code>performance.memory</code> (Chrome only); it is reported as
+ * <code>-1</code> when not available, and is only indicative since a collection may run during the
+ * measurement.
+ */
+public class StorageBenchmarkRunner {
+
+  /** A benchmarked piece of code, invoked with the number of operations to perform. */
+  public interface Workload {
+    void run(int operations);
+  }
+
+  private final String platform;
+  private final List<String> results = new ArrayList<String>();
+
+  /**
+   * Creates a runner.
+   *
+   * @param platform the name of the compiler the code runs under, e.g. "gwt2" or "j2cl"
+   */
+  public StorageBenchmarkRunner(String platform) {
+    this.platform = platform;
+  }
+
+  private static double usedHeap() {
+    JsPropertyMap<Object> performance = Js.asPropertyMap(DomGlobal.performance);
+    if (!performance.has("memory")) {
+      return -1;
+    }
+    return Js.asPropertyMap(performance.get("memory")).getAsAny("usedJSHeapSize").asDouble();
+  }
+
+  /**
+   * Warms the workload up, then measures it and records the result.
+   *
+   * @param name the name of the benchmark in the report
+   * @param operations the number of operations to measure
+   * @param workload the code to measure
+   */
+  public void measure(String name, int operations, Workload workload) {
+    workload.run(Math.max(1, operations / 10));
+
+    double heapBefore = usedHeap();
+    double start = DomGlobal.performance.now();
+    workload.run(operations);
+    double millis = DomGlobal.performance.now() - start;
+    double heapAfter = usedHeap();
+
+    double opsPerSec = millis > 0 ? operations * 1000 / millis : -1;
+    double allocated = heapBefore < 0 || heapAfter < 0 ? -1 : Math.max(0, heapAfter - heapBefore);
+    results.add(
+        "{\"platform\":\""
+            + platform
+            + "\",\"benchmark\":\""
+            + name
+            + "\",\"operations\":"
+            + operations
+            + ",\"millis\":"
+            + millis
+            + ",\"opsPerSec\":"
+            + Math.round(opsPerSec)
+            + ",\"allocatedBytes\":"
+            + Math.round(allocated)
+            + "}");
+  }
+
+  /** Returns the number of recorded results. */
+  public int size() {
+    return results.size();
+  }
+
+  /** Returns all recorded results as a JSON array. */
+  public String report() {
+    StringBuilder report = new StringBuilder("[");
+    for (int i = 0; i < results.size(); i++) {
+      if (i > 0) {
+        report.append(",\n");
+      }
+      report.append(results.get(i));
+    }
+    return report.append("]").toString();
+  }
+
+  /**
+   * Logs the report to the browser console, which the test runner copies to the test log, on a
+   * line starting with <code>STORAGE-BENCHMARK</code>.
+   */
+  public void publish() {
+    DomGlobal.console.log("STORAGE-BENCHMARK " + report());
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.Map;
+
+/**
+ * Measures {@link Storage} and {@link StorageMap} in the browser, as compiled by GWT2.
+ *
+ * <p>The same test exists in the J2CL test module; both publish their report, a JSON array
+ * prefixed by <code>STORAGE-BENCHMARK</code>, to the test log so that the two can be compared. It
+ * only runs with the <code>benchmarks</code> profile, without the {@link StorageMetrics}
+ * instrumentation.
+ */
+public class StorageBenchmarkTest extends GWTTestCase {
+  private static final String PLATFORM = "gwt2";
+
+  private Storage storage;
+  private StorageBenchmarkRunner runner;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    // the numbers must be those of the shipped code, not of the instrumented one
+    assertFalse("the benchmarks must run without StorageMetrics", StorageMetrics.isEnabled());
+    storage.clear();
+    runner = new StorageBenchmarkRunner(PLATFORM);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  public void testBenchmarks() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    runner.measure(
+        "setItem",
+        2000,
+        new StorageBenchmarkRunner.Workload() {
+          @Override
+          public void run(int operations) {
+            for (int i = 0; i < operations; i++) {
+              storage.setItem("key" + (i % 100), "value" + i);
+            }
+          }
+        });
+    runner.measure(
+        "getItem",
+        2000,
+        new StorageBenchmarkRunner.Workload() {
+          @Override
+          public void run(int operations) {
+            for (int i = 0; i < operations; i++) {
+              storage.getItem("key" + (i % 100));
+            }
+          }
+        });
+
+    fill(500);
+    final StorageMap map = new StorageMap(storage);
+    runner.measure(
+        "storageMapIteration[500]",
+        20,
+        new StorageBenchmarkRunner.Workload() {
+          @Override
+          public void run(int operations) {
+            for (int i = 0; i < operations; i++) {
+              for (Map.Entry<String, String> entry : map.entrySet()) {
+                entry.getValue();
+              }
+            }
+          }
+        });
+    storage.clear();
+
+    measureFanOut(0);
+    measureFanOut(1);
+    measureFanOut(100);
+
+    runner.publish();
+    assertEquals(6, runner.size());
+  }
+
+  private void fill(int size) {
+    for (int i = 0; i < size; i++) {
+      storage.setItem("key" + i, "value" + i);
+    }
+  }
+
+  private void measureFanOut(int handlers) {
+    StorageEvent.Handler[] registered = new StorageEvent.Handler[handlers];
+    for (int i = 0; i < handlers; i++) {
+      registered[i] =
+          new StorageEvent.Handler() {
+            @Override
+            public void onStorageChange(StorageEvent event) {
+              event.getKey();
+            }
+          };
+      Storage.addStorageEventHandler(registered[i]);
+    }
+    try {
+      runner.measure(
+          "eventFanOut[" + handlers + "]",
+          200,
+          new StorageBenchmarkRunner.Workload() {
+            @Override
+            public void run(int operations) {
+              for (int i = 0; i < operations; i++) {
+                storage.setItem("fanOut", "value" + i);
+              }
+            }
+          });
+    } finally {
+      for (StorageEvent.Handler handler : registered) {
+        Storage.removeStorageEventHandler(handler);
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.gwtproject.core.client.Scheduler;
+
+/** Tests {@link StorageJournal}. */
+public class StorageJournalTest extends GWTTestCase {
+  private Storage storage;
+  private StorageJournal journal;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    journal = new StorageJournal(storage, "journal");
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    journal.detach();
+    storage.clear();
+  }
+
+  public void testChangesSince() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    assertEquals(0, journal.getLastSeq());
+    storage.setItem("a", "1");
+    storage.setItem("b", "1");
+    storage.removeItem("a");
+    storage.setItem("b", "2");
+    storage.setItem("c", "1");
+    assertEquals(5, journal.getLastSeq());
+
+    assertEquals(Arrays.asList("3:REMOVE a", "4:SET b", "5:SET c"), toStrings(0));
+    assertEquals(Arrays.asList("5:SET c"), toStrings(4));
+    assertTrue(journal.getChangesSince(5).isEmpty());
+  }
+
+  public void testClear() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("a", "1");
+    assertEquals(1, journal.getLastSeq());
+    storage.clear();
+    storage.setItem("b", "1");
+    assertEquals(Arrays.asList("2:CLEAR", "3:SET b"), toStrings(0));
+    assertEquals(Arrays.asList("3:SET b"), toStrings(2));
+  }
+
+  public void testPersisted() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("a", "1");
+    storage.setItem("b", "1");
+    journal.detach();
+    // not recorded
+    storage.setItem("c", "1");
+
+    journal = new StorageJournal(storage, "journal");
+    assertEquals(2, journal.getLastSeq());
+    storage.setItem("a", "2");
+    assertEquals(Arrays.asList("2:SET b", "3:SET a"), toStrings(0));
+  }
+
+  public void testCapacity() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    journal.detach();
+    journal = new StorageJournal(storage, "journal", 8);
+    // repeated keys are folded before changes are dropped
+    for (int i = 0; i < 20; i++) {
+      storage.setItem("key" + (i % 4), "value" + i);
+    }
+    assertTrue(journal.covers(0));
+    assertEquals(4, journal.getChangesSince(0).size());
+
+    for (int i = 0; i < 20; i++) {
+      storage.setItem("other" + i, "value" + i);
+    }
+    assertEquals(40, journal.getLastSeq());
+    assertFalse(journal.covers(0));
+    assertTrue(journal.covers(39));
+    try {
+      journal.getChangesSince(0);
+      fail("getChangesSince should throw IllegalStateException for dropped changes");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(Arrays.asList("40:SET other19"), toStrings(39));
+  }
+
+  public void testDeferredAppend() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    storage.setItem("a", "1");
+    storage.setItem("b", "1");
+    assertNull(storage.getItem("journal"));
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                assertNotNull(storage.getItem("journal"));
+                // the journal was written once, not recorded
+                assertEquals(Arrays.asList("1:SET a", "2:SET b"), toStrings(0));
+                finishTest();
+              }
+            });
+  }
+
+  private List<String> toStrings(int seq) {
+    List<String> changes = new ArrayList<String>();
+    for (StorageJournal.Change change : journal.getChangesSince(seq)) {
+      changes.add(change.toString());
+    }
+    return changes;
+  }
+}
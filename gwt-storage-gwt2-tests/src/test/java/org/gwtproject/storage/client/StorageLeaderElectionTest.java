@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Tests {@link StorageLeaderElection}, with elections standing for windows. */
+public class StorageLeaderElectionTest extends GWTTestCase {
+  private Storage storage;
+  private long time;
+  private List<String> changes;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    time = 1000000;
+    changes = new ArrayList<String>();
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  public void testSingleLeader() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageLeaderElection a = start("a");
+    StorageLeaderElection b = start("b");
+    try {
+      // a claimed the free lease, b found it held
+      assertFalse(a.isLeader());
+      assertFalse(b.isLeader());
+      a.heartbeat();
+      b.heartbeat();
+      assertTrue(a.isLeader());
+      assertFalse(b.isLeader());
+
+      // renewals keep the leadership
+      time += 900;
+      a.heartbeat();
+      time += 900;
+      b.heartbeat();
+      assertTrue(a.isLeader());
+      assertFalse(b.isLeader());
+      assertEquals(Arrays.asList("a:true"), changes);
+    } finally {
+      a.stop();
+      b.stop();
+    }
+  }
+
+  public void testFailoverOnStop() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageLeaderElection a = start("a");
+    StorageLeaderElection b = start("b");
+    try {
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      // b is notified of the removal of the lease and claims it right away
+      a.stop();
+      assertTrue(storage.getItem("leader").contains(b.getId()));
+      b.heartbeat();
+      assertTrue(b.isLeader());
+      assertEquals(Arrays.asList("a:true", "a:false", "b:true"), changes);
+    } finally {
+      a.stop();
+      b.stop();
+    }
+  }
+
+  public void testLeaseExpiry() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageLeaderElection a = start("a");
+    StorageLeaderElection b = start("b");
+    try {
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      // a's timers stopped, e.g. as its tab was throttled
+      time += 1001;
+      b.heartbeat();
+      b.heartbeat();
+      assertTrue(b.isLeader());
+      // a stepped down when b claimed the lease
+      assertFalse(a.isLeader());
+      a.heartbeat();
+      assertFalse(a.isLeader());
+      assertEquals(Arrays.asList("a:true", "a:false", "b:true"), changes);
+    } finally {
+      a.stop();
+      b.stop();
+    }
+  }
+
+  public void testBackForwardCache() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageLeaderElection a = start("a");
+    StorageLeaderElection b = start("b");
+    try {
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      // a resigns while its page is in the back/forward cache, and b takes over
+      a.pageHidden(true);
+      assertFalse(a.isLeader());
+      b.heartbeat();
+      assertTrue(b.isLeader());
+      a.heartbeat();
+      assertFalse(storage.getItem("leader").contains(a.getId()));
+
+      // once restored, a takes part in the election again
+      a.pageShown();
+      assertFalse(a.isLeader());
+      b.stop();
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      assertEquals(Arrays.asList("a:true", "a:false", "b:true", "b:false", "a:true"), changes);
+
+      // an unloaded page leaves the election for good
+      a.pageHidden(false);
+      a.pageShown();
+      a.heartbeat();
+      assertFalse(a.isLeader());
+      assertNull(storage.getItem("leader"));
+    } finally {
+      a.stop();
+      b.stop();
+    }
+  }
+
+  public void testRestart() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageLeaderElection a = start("a");
+    try {
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      a.stop();
+      assertFalse(a.isLeader());
+      a.start(
+          new StorageLeaderElection.Listener() {
+            @Override
+            public void onLeadershipChange(boolean leader) {
+              changes.add("a:" + leader);
+            }
+          });
+      a.heartbeat();
+      assertTrue(a.isLeader());
+      assertEquals(Arrays.asList("a:true", "a:false", "a:true"), changes);
+    } finally {
+      a.stop();
+    }
+  }
+
+  private StorageLeaderElection start(final String window) {
+    StorageLeaderElection election =
+        new StorageLeaderElection(storage, "leader", 1000) {
+          @Override
+          long now() {
+            return time;
+          }
+        };
+    election.start(
+        new StorageLeaderElection.Listener() {
+          @Override
+          public void onLeadershipChange(boolean leader) {
+            changes.add(window + ":" + leader);
+          }
+        });
+    return election;
+  }
+}
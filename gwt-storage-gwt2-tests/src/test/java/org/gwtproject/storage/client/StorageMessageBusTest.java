@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.gwtproject.core.client.Scheduler;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/** Tests {@link StorageMessageBus}, with buses standing for windows. */
+public class StorageMessageBusTest extends GWTTestCase {
+  private Storage storage;
+  private StorageMessageBus a;
+  private StorageMessageBus b;
+  private List<String> received;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    a = new StorageMessageBus(storage, "bus");
+    b = new StorageMessageBus(storage, "bus");
+    received = new ArrayList<String>();
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    a.detach();
+    b.detach();
+    storage.clear();
+  }
+
+  public void testPublish() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    subscribe(a, "a", "greetings");
+    subscribe(b, "b", "greetings");
+    subscribe(b, "b", "other");
+    final int[] writes = new int[1];
+    HandlerRegistration registration =
+        Storage.addStorageEventHandler(
+            new StorageEvent.Handler() {
+              @Override
+              public void onStorageChange(StorageEvent event) {
+                if (event.getNewValue() != null) {
+                  writes[0]++;
+                }
+              }
+            });
+    try {
+      a.publish("greetings", "hello");
+      a.publish("greetings", "world");
+      a.publish("unknown", "ignored");
+      a.flush();
+    } finally {
+      registration.removeHandler();
+    }
+
+    // a does not receive its own messages
+    assertEquals(Arrays.asList("b:greetings=hello", "b:greetings=world"), received);
+    // the messages were sent in a single write, which left nothing behind
+    assertEquals(1, writes[0]);
+    assertEquals(0, storage.getLength());
+  }
+
+  public void testUnsubscribe() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    HandlerRegistration registration = subscribe(b, "b", "topic");
+    a.publish("topic", "first");
+    a.flush();
+    registration.removeHandler();
+    a.publish("topic", "second");
+    a.flush();
+    assertEquals(Arrays.asList("b:topic=first"), received);
+  }
+
+  public void testDeferredFlush() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    subscribe(b, "b", "topic");
+    delayTestFinish(2000);
+    a.publish("topic", "deferred");
+    assertTrue(received.isEmpty());
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                assertEquals(Arrays.asList("b:topic=deferred"), received);
+                assertEquals(0, storage.getLength());
+                finishTest();
+              }
+            });
+  }
+
+  private HandlerRegistration subscribe(StorageMessageBus bus, final String window, String topic) {
+    return bus.subscribe(
+        topic,
+        new StorageMessageBus.Subscriber() {
+          @Override
+          public void onMessage(String topic, String message) {
+            received.add(window + ":" + topic + "=" + message);
+          }
+        });
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/** Tests {@link StorageQuery}. */
+public class StorageQueryTest extends GWTTestCase {
+  private static final Predicate<String> PENDING =
+      new Predicate<String>() {
+        @Override
+        public boolean test(String value) {
+          return value.contains("\"status\":\"pending\"");
+        }
+      };
+
+  private Storage storage;
+  private int valuesRead;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    valuesRead = 0;
+    for (int i = 0; i < 20; i++) {
+      String status = i % 5 == 4 ? "pending" : "done";
+      storage.setItem("draft:" + (char) ('a' + i), "{\"status\":\"" + status + "\"}");
+    }
+    storage.setItem("note:a", "{\"status\":\"pending\"}");
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  public void testList() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    Map<String, String> pending = storage.query().keyPrefix("draft:").valueFilter(PENDING).list();
+    assertEquals(
+        new HashSet<String>(Arrays.asList("draft:e", "draft:j", "draft:o", "draft:t")),
+        pending.keySet());
+
+    assertEquals(5, storage.query().valueFilter(PENDING).list().size());
+    assertEquals(2, storage.query().valueFilter(PENDING).limit(2).list().size());
+    assertTrue(storage.query().keyPrefix("none:").list().isEmpty());
+  }
+
+  public void testKeyFilterSkipsValues() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    Map<String, String> items =
+        storage
+            .query()
+            .keyFilter(
+                new Predicate<String>() {
+                  @Override
+                  public boolean test(String key) {
+                    return key.endsWith("a");
+                  }
+                })
+            .valueFilter(counting(PENDING))
+            .list();
+    assertEquals(Arrays.asList("note:a"), new ArrayList<String>(items.keySet()));
+    // only the values of the keys accepted by the key filter were read
+    assertEquals(2, valuesRead);
+  }
+
+  public void testFindFirstTerminatesEarly() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    SortedStorageMap sorted = new SortedStorageMap(storage);
+    try {
+      Map.Entry<String, String> first =
+          storage
+              .query()
+              .candidates(sorted.subMap("draft:", true, "draft:\uFFFF", false).keySet())
+              .valueFilter(counting(PENDING))
+              .findFirst();
+      assertEquals("draft:e", first.getKey());
+      assertEquals(5, valuesRead);
+    } finally {
+      sorted.detach();
+    }
+
+    assertNull(storage.query().keyPrefix("note:").valueFilter(PENDING.negate()).findFirst());
+  }
+
+  public void testCandidatesSkipMissingKeys() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    Map<String, String> items =
+        storage.query().candidates(Arrays.asList("note:a", "missing", "draft:e")).list();
+    assertEquals(Arrays.asList("note:a", "draft:e"), new ArrayList<String>(items.keySet()));
+  }
+
+  public void testRun() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    final List<String> matches = new ArrayList<String>();
+    storage
+        .query()
+        .keyPrefix("draft:")
+        .valueFilter(PENDING)
+        .run(
+            new StorageQuery.Callback() {
+              @Override
+              public boolean onMatch(String key, String value) {
+                matches.add(key);
+                // stop after the second match
+                return matches.size() < 2;
+              }
+
+              @Override
+              public void onComplete() {
+                assertEquals(2, matches.size());
+                finishTest();
+              }
+            });
+    // the query runs after the current task
+    assertTrue(matches.isEmpty());
+  }
+
+  public void testRunEnumeratesKeysWhenStarting() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    final List<String> matches = new ArrayList<String>();
+    storage
+        .query()
+        .keyPrefix("late:")
+        .run(
+            new StorageQuery.Callback() {
+              @Override
+              public boolean onMatch(String key, String value) {
+                matches.add(key);
+                return true;
+              }
+
+              @Override
+              public void onComplete() {
+                assertEquals(Arrays.asList("late:1"), matches);
+                finishTest();
+              }
+            });
+    // the keys are only enumerated in the first slice
+    storage.setItem("late:1", "added after run");
+  }
+
+  private Predicate<String> counting(final Predicate<String> predicate) {
+    return new Predicate<String>() {
+      @Override
+      public boolean test(String value) {
+        valuesRead++;
+        return predicate.test(value);
+      }
+    };
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.gwtproject.core.client.Scheduler;
+
+/** Tests {@link StorageSync} against an in-process server. */
+public class StorageSyncTest extends GWTTestCase {
+
+  /*
+   * Keeps the synchronized items and the version of the last change of each key
+   */
+  private static class FakeServer {
+    final Map<String, String> items = new LinkedHashMap<String, String>();
+    final Map<String, Integer> versions = new LinkedHashMap<String, Integer>();
+    int version;
+
+    void push(String delta) {
+      version++;
+      PositionalReader reader = new PositionalReader(delta);
+      reader.beginArray();
+      if (reader.readBoolean()) {
+        for (String key : items.keySet()) {
+          versions.put(key, version);
+        }
+        items.clear();
+      }
+      while (reader.hasNext()) {
+        String key = reader.readString();
+        if (reader.readNull()) {
+          items.remove(key);
+        } else {
+          items.put(key, reader.readString());
+        }
+        versions.put(key, version);
+      }
+      reader.endArray();
+      reader.end();
+    }
+
+    String pull(int sinceVersion) {
+      PositionalWriter writer = new PositionalWriter().beginArray().writeBoolean(sinceVersion == 0);
+      for (Map.Entry<String, Integer> entry : versions.entrySet()) {
+        String value = items.get(entry.getKey());
+        if (sinceVersion == 0 ? value != null : entry.getValue() > sinceVersion) {
+          writer.writeString(entry.getKey());
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeString(value);
+          }
+        }
+      }
+      return writer.endArray().toString();
+    }
+  }
+
+  private Storage local;
+  private Storage session;
+  private FakeServer server;
+  private StorageSync localSync;
+  private StorageSync sessionSync;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    local = Storage.getLocalStorageIfSupported();
+    session = Storage.getSessionStorageIfSupported();
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    local.clear();
+    session.clear();
+    server = new FakeServer();
+    localSync = new StorageSync(local, "sync", "rec:");
+    sessionSync = new StorageSync(session, "sync", "rec:");
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    localSync.detach();
+    sessionSync.detach();
+    local.clear();
+    session.clear();
+  }
+
+  public void testSync() {
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    local.setItem("rec:1", "a");
+    local.setItem("rec:2", "b");
+    local.setItem("other", "c");
+    assertTrue(localSync.isFullSyncPending());
+    server.push(localSync.exportDelta(100));
+    localSync.acknowledge();
+    assertFalse(localSync.isFullSyncPending());
+    assertEquals(0, localSync.getDirtyCount());
+    assertNull(localSync.exportDelta(100));
+
+    // the second client starts from a snapshot of the server
+    sessionSync.applyDelta(server.pull(0));
+    int pulled = server.version;
+    assertEquals("a", session.getItem("rec:1"));
+    assertEquals("b", session.getItem("rec:2"));
+    assertNull(session.getItem("other"));
+    assertNull(sessionSync.exportDelta(100));
+
+    // only the changed items are sent, in batches
+    local.setItem("rec:1", "a2");
+    local.removeItem("rec:2");
+    local.setItem("rec:3", "d");
+    local.setItem("rec:3", "d2");
+    local.setItem("other", "c2");
+    assertEquals(3, localSync.getDirtyCount());
+    String delta = localSync.exportDelta(2);
+    assertEquals("[0,\"1\",\"a2\",\"2\",null]", delta);
+    server.push(delta);
+    localSync.acknowledge();
+    server.push(localSync.exportDelta(2));
+    localSync.acknowledge();
+    assertEquals(0, localSync.getDirtyCount());
+
+    // the changes applied from the server are not sent back
+    sessionSync.applyDelta(server.pull(pulled));
+    assertEquals("a2", session.getItem("rec:1"));
+    assertNull(session.getItem("rec:2"));
+    assertEquals("d2", session.getItem("rec:3"));
+    assertEquals(0, sessionSync.getDirtyCount());
+    assertNull(sessionSync.exportDelta(100));
+  }
+
+  public void testChangedWhileSent() {
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    server.push(localSync.exportDelta(100));
+    localSync.acknowledge();
+    local.setItem("rec:1", "a");
+    local.setItem("rec:2", "b");
+    String delta = localSync.exportDelta(100);
+    try {
+      localSync.exportDelta(100);
+      fail("exportDelta should throw IllegalStateException while a delta is sent");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    local.setItem("rec:1", "a2");
+    server.push(delta);
+    localSync.acknowledge();
+    assertEquals(1, localSync.getDirtyCount());
+    assertEquals("[0,\"1\",\"a2\"]", localSync.exportDelta(100));
+    localSync.abort();
+    assertEquals(1, localSync.getDirtyCount());
+  }
+
+  public void testClearSendsSnapshot() {
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    local.setItem("rec:1", "a");
+    server.push(localSync.exportDelta(100));
+    localSync.acknowledge();
+    local.clear();
+    local.setItem("rec:2", "b");
+    assertTrue(localSync.isFullSyncPending());
+    server.push(localSync.exportDelta(100));
+    localSync.acknowledge();
+    assertEquals(1, server.items.size());
+    assertEquals("b", server.items.get("2"));
+  }
+
+  public void testDirtyKeysPersisted() {
+    if (local == null || session == null) {
+      return; // do not run if not supported
+    }
+
+    server.push(localSync.exportDelta(100));
+    localSync.acknowledge();
+    delayTestFinish(2000);
+    local.setItem("rec:1", "a");
+    local.setItem("rec:2", "b");
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                // as after a reload
+                StorageSync reloaded = new StorageSync(local, "sync", "rec:");
+                reloaded.detach();
+                assertFalse(reloaded.isFullSyncPending());
+                assertEquals(2, reloaded.getDirtyCount());
+                finishTest();
+              }
+            });
+  }
+}
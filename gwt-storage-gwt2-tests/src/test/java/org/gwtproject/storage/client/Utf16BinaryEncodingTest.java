@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import java.util.Arrays;
+
+/** Tests {@link Utf16BinaryEncoding}. */
+public class Utf16BinaryEncodingTest extends GWTTestCase {
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  private static byte[] makeBytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (i * 31 + 7);
+    }
+    return bytes;
+  }
+
+  public void testRoundTrip() {
+    for (int length = 0; length < 64; length++) {
+      byte[] bytes = makeBytes(length);
+      String encoded = Utf16BinaryEncoding.encode(bytes);
+      assertEquals(Utf16BinaryEncoding.encodedLength(length), encoded.length());
+      assertTrue(Arrays.equals(bytes, Utf16BinaryEncoding.decode(encoded)));
+    }
+  }
+
+  public void testNoSurrogatesNorControlCharacters() {
+    byte[] bytes = new byte[256];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) 0xFF;
+    }
+    String encoded = Utf16BinaryEncoding.encode(bytes) + Utf16BinaryEncoding.encode(new byte[256]);
+    for (int i = 0; i < encoded.length(); i++) {
+      char c = encoded.charAt(i);
+      assertTrue(c < 0xD800 || c > 0xDFFF);
+      assertTrue(c >= 0x1000);
+    }
+  }
+
+  public void testDensity() {
+    // 1000 bytes are 8000 bits: 534 code units plus the padding marker
+    assertEquals(535, Utf16BinaryEncoding.encode(makeBytes(1000)).length());
+  }
+
+  public void testStreamingEncoder() {
+    byte[] bytes = makeBytes(100);
+    Utf16BinaryEncoding.Encoder encoder = new Utf16BinaryEncoding.Encoder(new StringBuilder());
+    for (int i = 0; i < bytes.length; i += 7) {
+      encoder.write(bytes, i, Math.min(7, bytes.length - i));
+    }
+    assertEquals(Utf16BinaryEncoding.encode(bytes), encoder.finish().toString());
+  }
+
+  public void testInvalidEncoding() {
+    try {
+      Utf16BinaryEncoding.decode("");
+      fail("empty string should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Utf16BinaryEncoding.decode("abc");
+      fail("characters out of range should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testStorageBytes() {
+    Storage storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    byte[] bytes = makeBytes(100);
+    storage.setBytes("tsbFoo", bytes);
+    assertTrue(Arrays.equals(bytes, storage.getBytes("tsbFoo")));
+    assertNull(storage.getBytes("notset"));
+    storage.removeItem("tsbFoo");
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+
+/** Tests {@link ChunkedStorage}. */
+@J2clTestInput(ChunkedStorageTest.class)
+public class ChunkedStorageTest extends GWTTestCase {
+  private Storage storage;
+  private ChunkedStorage chunked;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    chunked = new ChunkedStorage(storage, 10);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  private static String makeValue(int length) {
+    StringBuilder value = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      value.append((char) ('a' + i % 26));
+    }
+    return value.toString();
+  }
+
+  public void testSetAndGetValue() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    String value = makeValue(95);
+    chunked.setValue("foo", value);
+    assertEquals(value, chunked.getValue("foo"));
+    assertEquals(95, chunked.getLength("foo"));
+    assertEquals(10, chunked.getChunkCount("foo"));
+    // 10 chunks and the manifest
+    assertEquals(11, storage.getLength());
+
+    assertNull(chunked.getValue("notset"));
+    assertEquals(-1, chunked.getLength("notset"));
+  }
+
+  public void testReplaceValueRemovesOldChunks() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    chunked.setValue("foo", makeValue(95));
+    chunked.setValue("foo", "bar");
+    assertEquals("bar", chunked.getValue("foo"));
+    assertEquals(2, storage.getLength());
+
+    chunked.removeValue("foo");
+    assertNull(chunked.getValue("foo"));
+    assertEquals(0, storage.getLength());
+  }
+
+  public void testChunkAndRangeReads() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    String value = makeValue(95);
+    chunked.setValue("foo", value);
+    assertEquals(value.substring(10, 20), chunked.getChunk("foo", 1));
+    assertEquals(value.substring(90), chunked.getChunk("foo", 9));
+    assertNull(chunked.getChunk("foo", 10));
+    assertEquals(value.substring(7, 33), chunked.getRange("foo", 7, 33));
+    assertEquals("", chunked.getRange("foo", 95, 95));
+    try {
+      chunked.getRange("foo", 90, 96);
+      fail("range beyond the value should be rejected");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testPlainItemsReadAsSingleChunk() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("foo", "plain value");
+    assertEquals("plain value", chunked.getValue("foo"));
+    assertEquals(1, chunked.getChunkCount("foo"));
+    assertEquals("value", chunked.getRange("foo", 6, 11));
+  }
+
+  public void testStreaming() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    String value = makeValue(95);
+    ChunkedStorage.ValueWriter writer = chunked.openWriter("foo");
+    for (int i = 0; i < value.length(); i += 7) {
+      writer.write(value.substring(i, Math.min(i + 7, value.length())));
+    }
+    // not visible before the writer is closed
+    assertNull(chunked.getValue("foo"));
+    writer.close();
+
+    ChunkedStorage.ValueReader reader = chunked.openReader("foo");
+    assertEquals(95, reader.getLength());
+    char[] buffer = new char[7];
+    StringBuilder read = new StringBuilder();
+    int count;
+    while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+      read.append(buffer, 0, count);
+    }
+    assertEquals(value, read.toString());
+  }
+
+  public void testAbortKeepsPreviousValue() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    chunked.setValue("foo", "old");
+    ChunkedStorage.ValueWriter writer = chunked.openWriter("foo");
+    writer.write(makeValue(50));
+    writer.abort();
+    assertEquals("old", chunked.getValue("foo"));
+    assertEquals(2, storage.getLength());
+  }
+
+  public void testConcurrentWriters() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    chunked.setValue("foo", "old");
+    ChunkedStorage.ValueWriter first = chunked.openWriter("foo");
+    ChunkedStorage.ValueWriter second = chunked.openWriter("foo");
+    ChunkedStorage.ValueWriter aborted = chunked.openWriter("foo");
+    first.write(makeValue(30));
+    second.write("second value, longer than the first one");
+    aborted.write(makeValue(20));
+    first.close();
+    aborted.abort();
+    assertEquals(makeValue(30), chunked.getValue("foo"));
+    // the manifest, the 3 chunks of the first writer and the 3 completed chunks of the second
+    assertEquals(7, storage.getLength());
+
+    // the last writer to close wins, and removes the chunks of the value it replaces
+    second.close();
+    assertEquals("second value, longer than the first one", chunked.getValue("foo"));
+    assertEquals(5, storage.getLength());
+  }
+
+  public void testSetValueIncrementally() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    final String value = makeValue(95);
+    chunked.setValue("foo", "old");
+    chunked.setValueIncrementally(
+        "foo",
+        value,
+        new ChunkedStorage.Callback() {
+          @Override
+          public void onSuccess() {
+            assertEquals(value, chunked.getValue("foo"));
+            finishTest();
+          }
+
+          @Override
+          public void onFailure(Throwable caught) {
+            fail(caught.getMessage());
+          }
+        });
+    // the previous value stays readable until the new one is written
+    assertEquals("old", chunked.getValue("foo"));
+  }
+}
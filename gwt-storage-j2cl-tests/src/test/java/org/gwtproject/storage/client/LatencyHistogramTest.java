@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+
+/** Tests {@link LatencyHistogram}. */
+@J2clTestInput(LatencyHistogramTest.class)
+public class LatencyHistogramTest extends GWTTestCase {
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 16; i++) {
+      histogram.record(i);
+    }
+    assertEquals(16, histogram.getCount());
+    assertEquals(0, histogram.getMin());
+    assertEquals(15, histogram.getMax());
+    assertEquals(7, histogram.getValueAtPercentile(50));
+    assertEquals(15, histogram.getValueAtPercentile(100));
+  }
+
+  public void testPercentilesWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i);
+    }
+    assertPercentile(5000, histogram.getValueAtPercentile(50));
+    assertPercentile(9000, histogram.getValueAtPercentile(90));
+    assertPercentile(9900, histogram.getValueAtPercentile(99));
+    assertEquals(10000, histogram.getValueAtPercentile(100));
+    assertEquals(5000.5, histogram.getMean(), 0.001);
+  }
+
+  public void testClampsOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(1e12);
+    assertEquals(0, histogram.getMin());
+    assertEquals(Integer.MAX_VALUE, histogram.getMax());
+  }
+
+  public void testCopyAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(42);
+    LatencyHistogram copy = histogram.copy();
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(1, copy.getCount());
+    assertEquals(42, copy.getMax());
+  }
+
+  private void assertPercentile(int expected, int actual) {
+    assertTrue("expected ~" + expected + " but was " + actual, actual >= expected);
+    assertTrue("expected ~" + expected + " but was " + actual, actual <= expected * 1.07);
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+import org.gwtproject.core.client.Scheduler;
+
+/** Tests {@link MigratingStorage}. */
+@J2clTestInput(MigratingStorageTest.class)
+public class MigratingStorageTest extends GWTTestCase {
+  private Storage storage;
+  private MigratingStorage migrating;
+  private int migrations;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    migrations = 0;
+    migrating = new MigratingStorage(storage, 2);
+    migrating.addMigrator(
+        0,
+        new MigratingStorage.Migrator() {
+          @Override
+          public String migrate(String key, String value) {
+            migrations++;
+            return "discard".equals(value) ? null : value + ">1";
+          }
+        });
+    migrating.addMigrator(
+        1,
+        new MigratingStorage.Migrator() {
+          @Override
+          public String migrate(String key, String value) {
+            migrations++;
+            return value + ">2";
+          }
+        });
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  public void testCurrentVersion() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    migrating.setItem("foo", "bar");
+    assertEquals(2, migrating.getStoredVersion("foo"));
+    assertEquals("bar", migrating.getItem("foo"));
+    assertEquals(0, migrations);
+    assertNull(migrating.getItem("missing"));
+    assertEquals(-1, migrating.getStoredVersion("missing"));
+  }
+
+  public void testLazyMigration() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("foo", "bar");
+    assertEquals(0, migrating.getStoredVersion("foo"));
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals(2, migrations);
+
+    // without write-back, the value is migrated again
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals(4, migrations);
+    assertEquals("bar", storage.getItem("foo"));
+
+    storage.setItem("gone", "discard");
+    assertNull(migrating.getItem("gone"));
+  }
+
+  public void testWriteBack() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    migrating.setWriteBack(true);
+    storage.setItem("foo", "bar");
+    storage.setItem("baz", "qux");
+    storage.setItem("gone", "discard");
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals("qux>1>2", migrating.getItem("baz"));
+    assertNull(migrating.getItem("gone"));
+    assertEquals(3, migrating.getPendingWriteBackCount());
+
+    // pending values are not migrated again
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals(5, migrations);
+
+    // a value changed before the write-back is kept
+    storage.setItem("baz", "changed");
+    migrating.flush();
+    assertEquals(0, migrating.getPendingWriteBackCount());
+    assertEquals(2, migrating.getStoredVersion("foo"));
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals("changed", storage.getItem("baz"));
+    assertNull(storage.getItem("gone"));
+  }
+
+  public void testWriteBackInIdleTime() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    migrating.setWriteBack(true);
+    storage.setItem("foo", "bar");
+    assertEquals("bar>1>2", migrating.getItem("foo"));
+    assertEquals(0, migrating.getStoredVersion("foo"));
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                assertEquals(2, migrating.getStoredVersion("foo"));
+                assertEquals(0, migrating.getPendingWriteBackCount());
+                finishTest();
+              }
+            });
+  }
+
+  public void testNewerVersion() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    new MigratingStorage(storage, 3).setItem("foo", "bar");
+    try {
+      migrating.getItem("foo");
+      fail("values of a newer version should be rejected");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
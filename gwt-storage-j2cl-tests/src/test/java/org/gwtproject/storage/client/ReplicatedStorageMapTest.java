@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Tests {@link ReplicatedStorageMap}, with maps standing for windows. */
+@J2clTestInput(ReplicatedStorageMapTest.class)
+public class ReplicatedStorageMapTest extends MapInterfaceTest<String, String> {
+  private static final String PREFIX = "doc\u001F";
+
+  private Storage storage;
+  private List<ReplicatedStorageMap> maps;
+  private long time;
+
+  public ReplicatedStorageMapTest() {
+    super(false, false, true, true, true);
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    maps = new ArrayList<ReplicatedStorageMap>();
+    time = 1000000;
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (ReplicatedStorageMap map : maps) {
+      map.detach();
+    }
+    storage.clear();
+  }
+
+  @Override
+  protected String getKeyNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingKey";
+  }
+
+  @Override
+  protected String getValueNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingValue";
+  }
+
+  @Override
+  protected Map<String, String> makeEmptyMap() throws UnsupportedOperationException {
+    if (storage == null) {
+      throw new UnsupportedOperationException(
+          "ReplicatedStorageMap not supported because Storage is not supported.");
+    }
+
+    storage.clear();
+
+    return newMap();
+  }
+
+  @Override
+  protected Map<String, String> makePopulatedMap() throws UnsupportedOperationException {
+    Map<String, String> map = makeEmptyMap();
+    map.put("one", "January");
+    map.put("two", "February");
+    map.put("three", "March");
+    map.put("four", "April");
+    map.put("five", "May");
+    return map;
+  }
+
+  public void testReplication() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ReplicatedStorageMap a = newMap();
+    ReplicatedStorageMap b = newMap();
+    a.put("k", "1");
+    assertEquals("1", b.get("k"));
+    b.put("k", "2");
+    assertEquals("2", a.get("k"));
+    a.remove("k");
+    assertFalse(b.containsKey("k"));
+    assertTrue(b.isEmpty());
+
+    // a window opened later reads the entries
+    a.put("j", "3");
+    assertEquals("3", newMap().get("j"));
+  }
+
+  public void testOutdatedWriteIsRepaired() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ReplicatedStorageMap a = newMap();
+    ReplicatedStorageMap b = newMap();
+    a.put("k", "new");
+    // another window wrote the item at the same time, with an older stamp
+    storage.setItem(PREFIX + "k", item(time - 1, "zz", "old"));
+    assertEquals("new", a.get("k"));
+    assertEquals("new", b.get("k"));
+    assertEquals(item(time, a.getId(), "new"), storage.getItem(PREFIX + "k"));
+
+    // the same stamp is won by the greatest window id
+    storage.setItem(PREFIX + "k", item(time, a.getId() + "z", "tie"));
+    assertEquals("tie", a.get("k"));
+    assertEquals("tie", b.get("k"));
+
+    // a write is stamped after the stamps already seen, even from a late clock
+    time -= 10;
+    b.put("k", "later");
+    assertEquals("later", a.get("k"));
+  }
+
+  public void testTombstones() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ReplicatedStorageMap a = newMap();
+    ReplicatedStorageMap b = newMap();
+    a.put("k", "1");
+    time++;
+    a.remove("k");
+    // a concurrent write older than the removal does not bring the entry back
+    storage.setItem(PREFIX + "k", item(time - 1, "zz", "resurrected"));
+    assertNull(a.get("k"));
+    assertNull(b.get("k"));
+    assertEquals(1, storage.getLength());
+
+    // once expired, the tombstone is removed from every window
+    time += 1000;
+    a.compact();
+    assertEquals(0, storage.getLength());
+    b.compact();
+    assertEquals(0, storage.getLength());
+    assertTrue(b.isEmpty());
+
+    // expired tombstones are also removed by the writes
+    a.put("j", "1");
+    a.remove("j");
+    time += 2000;
+    a.put("i", "1");
+    assertNull(storage.getItem(PREFIX + "j"));
+    assertEquals(1, storage.getLength());
+  }
+
+  public void testClearStorage() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    ReplicatedStorageMap a = newMap();
+    a.put("k", "1");
+    a.remove("k");
+    a.put("j", "2");
+    storage.clear();
+    assertTrue(a.isEmpty());
+    assertEquals(0, storage.getLength());
+  }
+
+  private ReplicatedStorageMap newMap() {
+    ReplicatedStorageMap map =
+        new ReplicatedStorageMap(storage, "doc", 1000) {
+          @Override
+          long now() {
+            return time;
+          }
+        };
+    maps.add(map);
+    return map;
+  }
+
+  private static String item(long stamp, String writer, String value) {
+    return new PositionalWriter()
+        .beginArray()
+        .writeLong(stamp)
+        .writeString(writer)
+        .writeString(value)
+        .endArray()
+        .toString();
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/** Tests {@link SortedStorageMap}. */
+@J2clTestInput(SortedStorageMapTest.class)
+public class SortedStorageMapTest extends MapInterfaceTest<String, String> {
+  private Storage storage;
+  private List<SortedStorageMap> maps;
+
+  public SortedStorageMapTest() {
+    super(false, false, true, true, true);
+  }
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    maps = new ArrayList<SortedStorageMap>();
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (SortedStorageMap map : maps) {
+      map.detach();
+    }
+    storage.clear();
+  }
+
+  @Override
+  protected String getKeyNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingKey";
+  }
+
+  @Override
+  protected String getValueNotInPopulatedMap() throws UnsupportedOperationException {
+    return "nonExistingValue";
+  }
+
+  @Override
+  protected Map<String, String> makeEmptyMap() throws UnsupportedOperationException {
+    if (storage == null) {
+      throw new UnsupportedOperationException(
+          "SortedStorageMap not supported because Storage is not supported.");
+    }
+
+    storage.clear();
+
+    return newMap();
+  }
+
+  @Override
+  protected Map<String, String> makePopulatedMap() throws UnsupportedOperationException {
+    Map<String, String> map = makeEmptyMap();
+    map.put("one", "January");
+    map.put("two", "February");
+    map.put("three", "March");
+    map.put("four", "April");
+    map.put("five", "May");
+    return map;
+  }
+
+  public void testNavigation() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("b", "2");
+    storage.setItem("d", "4");
+    storage.setItem("a", "1");
+    storage.setItem("c", "3");
+    SortedStorageMap map = newMap();
+
+    assertEquals(Arrays.asList("a", "b", "c", "d"), new ArrayList<String>(map.keySet()));
+    assertEquals("a", map.firstKey());
+    assertEquals("d", map.lastKey());
+    assertEquals("c", map.ceilingKey("bb"));
+    assertEquals("b", map.floorKey("bb"));
+    assertEquals("b", map.lowerKey("c"));
+    assertEquals("d", map.higherKey("c"));
+    assertNull(map.higherKey("d"));
+    assertEquals("3", map.ceilingEntry("c").getValue());
+    assertEquals(
+        Arrays.asList("d", "c", "b", "a"), new ArrayList<String>(map.descendingKeySet()));
+
+    Map.Entry<String, String> first = map.pollFirstEntry();
+    assertEquals("a", first.getKey());
+    assertEquals("1", first.getValue());
+    assertNull(storage.getItem("a"));
+    assertEquals(3, map.size());
+  }
+
+  public void testRangeViews() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    SortedStorageMap map = newMap();
+    for (int i = 0; i < 10; i++) {
+      map.put("log:" + i, "entry" + i);
+    }
+    map.put("other", "value");
+
+    NavigableMap<String, String> logs = map.subMap("log:", true, "log:\uFFFF", false);
+    assertEquals(10, logs.size());
+    NavigableMap<String, String> head = logs.headMap("log:3", false);
+    assertEquals(Arrays.asList("log:0", "log:1", "log:2"), new ArrayList<String>(head.keySet()));
+    assertEquals("log:7", logs.tailMap("log:7", true).firstKey());
+    assertEquals("log:9", logs.descendingMap().firstKey());
+
+    // changes through a view are written to the Storage and seen by the map
+    logs.put("log:10", "entry10");
+    assertEquals("entry10", storage.getItem("log:10"));
+    assertEquals(12, map.size());
+    try {
+      head.put("log:5", "outside");
+      fail("put should throw IllegalArgumentException for a key outside of the view");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals("entry5", storage.getItem("log:5"));
+
+    logs.clear();
+    assertEquals(1, map.size());
+    assertEquals(1, storage.getLength());
+    assertEquals("value", storage.getItem("other"));
+  }
+
+  public void testIndexFollowsStorage() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    SortedStorageMap map = newMap();
+    storage.setItem("b", "2");
+    storage.setItem("a", "1");
+    assertEquals("a", map.firstKey());
+    storage.removeItem("a");
+    assertEquals("b", map.firstKey());
+    storage.clear();
+    assertTrue(map.isEmpty());
+  }
+
+  private SortedStorageMap newMap() {
+    SortedStorageMap map = new SortedStorageMap(storage);
+    maps.add(map);
+    return map;
+  }
+}
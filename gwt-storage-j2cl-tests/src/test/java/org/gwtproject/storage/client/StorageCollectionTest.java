@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+import java.util.Arrays;
+import org.gwtproject.core.client.Scheduler;
+
+/** Tests {@link StorageCollection}. */
+@J2clTestInput(StorageCollectionTest.class)
+public class StorageCollectionTest extends GWTTestCase {
+  private Storage storage;
+  private StorageCollection collection;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    collection = new StorageCollection(storage, "records", 4, 2);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+  }
+
+  public void testPutAndGet() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (int i = 0; i < 10; i++) {
+      collection.put("id" + i, "value" + i);
+    }
+    collection.put("id3", "changed");
+    assertEquals(10, collection.size());
+    assertEquals("changed", collection.get("id3"));
+    assertEquals("value9", collection.get("id9"));
+    assertNull(collection.get("missing"));
+    assertTrue(collection.contains("id0"));
+    assertFalse(collection.contains("missing"));
+
+    collection.flush();
+    // 3 pages of up to 4 records, plus the directory
+    assertEquals(3, collection.getPageCount());
+    assertEquals(4, storage.getLength());
+
+    StorageCollection reopened = new StorageCollection(storage, "records", 4, 2);
+    assertEquals(10, reopened.size());
+    assertEquals("changed", reopened.get("id3"));
+    for (int i = 0; i < 10; i++) {
+      if (i != 3) {
+        assertEquals("value" + i, reopened.get("id" + i));
+      }
+    }
+  }
+
+  public void testOnlyDirtyPagesAreWritten() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (int i = 0; i < 8; i++) {
+      collection.put("id" + i, "value" + i);
+    }
+    collection.flush();
+
+    // pages are rewritten as a whole, so a changed item reveals a rewritten page
+    String secondPage = storage.getItem("records\u001F1");
+    storage.setItem("records\u001F1", secondPage.replace("value5", "stale"));
+    collection.put("id0", "changed");
+    collection.flush();
+    assertTrue(storage.getItem("records\u001F0").contains("changed"));
+    assertTrue(storage.getItem("records\u001F1").contains("stale"));
+  }
+
+  public void testRemove() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (int i = 0; i < 6; i++) {
+      collection.put("id" + i, "value" + i);
+    }
+    assertTrue(collection.remove("id1"));
+    assertFalse(collection.remove("id1"));
+    assertTrue(collection.remove("id4"));
+    assertTrue(collection.remove("id5"));
+    collection.flush();
+    assertEquals(1, collection.getPageCount());
+    assertEquals(Arrays.asList("id0", "id2", "id3"), collection.getIds());
+
+    // the free slot of the first page is reused
+    collection.put("id6", "value6");
+    collection.flush();
+    assertEquals(1, collection.getPageCount());
+    assertEquals(2, storage.getLength());
+
+    collection.clear();
+    collection.flush();
+    assertEquals(0, collection.size());
+    assertEquals(0, storage.getLength());
+  }
+
+  public void testReload() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    collection.put("foo", "bar");
+    collection.flush();
+    StorageCollection other = new StorageCollection(storage, "records", 4, 2);
+    other.put("foo", "baz");
+    other.flush();
+    assertEquals("bar", collection.get("foo"));
+    collection.reload();
+    assertEquals("baz", collection.get("foo"));
+  }
+
+  public void testReadWhileCacheIsDirty() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (int i = 0; i < 12; i++) {
+      collection.put("id" + i, "value" + i);
+    }
+    collection.flush();
+
+    // a page read while the cache only holds dirty pages is kept until the next flush
+    StorageCollection small = new StorageCollection(storage, "records", 4, 1);
+    small.put("id0", "changed0");
+    assertEquals("value5", small.get("id5"));
+    small.put("id9", "changed9");
+    assertEquals("value2", small.get("id2"));
+    assertEquals("value6", small.get("id6"));
+    small.flush();
+    assertEquals("changed0", small.get("id0"));
+    assertEquals("changed9", small.get("id9"));
+    assertEquals("value10", small.get("id10"));
+  }
+
+  public void testDeferredFlush() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    collection.put("foo", "bar");
+    assertEquals(0, storage.getLength());
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                assertEquals(2, storage.getLength());
+                finishTest();
+              }
+            });
+  }
+}
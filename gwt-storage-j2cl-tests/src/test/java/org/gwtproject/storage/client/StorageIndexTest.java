@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+/** Tests {@link StorageIndex}. */
+@J2clTestInput(StorageIndexTest.class)
+public class StorageIndexTest extends GWTTestCase {
+  private static final StorageIndex.Extractor STATUS =
+      new StorageIndex.Extractor() {
+        @Override
+        public String extract(String key, String value) {
+          int start = value.indexOf("\"status\":\"");
+          if (start < 0) {
+            return null;
+          }
+          start += "\"status\":\"".length();
+          return value.substring(start, value.indexOf('"', start));
+        }
+      };
+
+  private Storage storage;
+  private StorageIndex index;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.clear();
+    storage.setItem("rec:1", record("pending"));
+    storage.setItem("rec:2", record("done"));
+    storage.setItem("rec:3", record("pending"));
+    storage.setItem("rec:4", "{}");
+    storage.setItem("other", record("pending"));
+    index = new StorageIndex(storage, "idx:status", "rec:", STATUS);
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    index.detach();
+    storage.clear();
+  }
+
+  public void testBuild() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    assertEquals(keys("rec:1", "rec:3"), index.lookup("pending"));
+    assertEquals(keys("rec:2"), index.lookup("done"));
+    assertTrue(index.lookup("unknown").isEmpty());
+  }
+
+  public void testIncrementalUpdates() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("rec:2", record("pending"));
+    storage.setItem("rec:5", record("done"));
+    storage.removeItem("rec:1");
+    storage.setItem("rec:3", "{}");
+    storage.setItem("other2", record("done"));
+    assertEquals(keys("rec:2"), index.lookup("pending"));
+    assertEquals(keys("rec:5"), index.lookup("done"));
+
+    // the index was updated as items changed, not rebuilt
+    index.rebuild();
+    assertEquals(keys("rec:2"), index.lookup("pending"));
+    assertEquals(keys("rec:5"), index.lookup("done"));
+  }
+
+  public void testPersisted() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    index.detach();
+    // not seen by any index
+    storage.setItem("rec:5", record("pending"));
+
+    index = new StorageIndex(storage, "idx:status", "rec:", STATUS);
+    assertEquals(keys("rec:1", "rec:3"), index.lookup("pending"));
+    index.rebuild();
+    assertEquals(keys("rec:1", "rec:3", "rec:5"), index.lookup("pending"));
+  }
+
+  public void testQuery() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    Map<String, String> items = storage.query().candidates(index.lookup("done")).list();
+    assertEquals(1, items.size());
+    assertEquals(record("done"), items.get("rec:2"));
+  }
+
+  public void testEmptyPrefix() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    // the items of the index itself are not indexed
+    StorageIndex all = new StorageIndex(storage, "idx:all", "", STATUS);
+    try {
+      assertEquals(keys("rec:1", "rec:3", "other"), all.lookup("pending"));
+      storage.setItem("other2", record("done"));
+      assertEquals(keys("rec:2", "other2"), all.lookup("done"));
+      all.rebuild();
+      assertEquals(keys("rec:1", "rec:3", "other"), all.lookup("pending"));
+    } finally {
+      all.detach();
+    }
+
+    StorageIndex unprefixed = new StorageIndex(storage, "idx:none", null, STATUS);
+    unprefixed.detach();
+    assertEquals(keys("rec:2", "other2"), unprefixed.lookup("done"));
+  }
+
+  public void testNameWithinPrefixRejected() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    try {
+      new StorageIndex(storage, "rec:idx", "rec:", STATUS);
+      fail("the index name should not start with the key prefix");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static HashSet<String> keys(String... keys) {
+    return new HashSet<String>(Arrays.asList(keys));
+  }
+
+  private static String record(String status) {
+    return "{\"status\":\"" + status + "\"}";
+  }
+}
@@ -16,10 +16,43 @@
 
 package org.gwtproject.storage.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.gwtproject.event.shared.HandlerRegistration;
 
 /** Tests {@link StorageMap}. */
 public abstract class StorageMapTest extends MapInterfaceTest<String, String> {
+  private static final BiFunction<String, String, String> CONCAT =
+      new BiFunction<String, String, String>() {
+        @Override
+        public String apply(String a, String b) {
+          return "remove".equals(b) ? null : a + b;
+        }
+      };
+
+  private static final BiFunction<String, String, String> SAME =
+      new BiFunction<String, String, String>() {
+        @Override
+        public String apply(String a, String b) {
+          return "same";
+        }
+      };
+
+  private static final Function<String, String> UPPER_CASE =
+      new Function<String, String>() {
+        @Override
+        public String apply(String key) {
+          return key.toUpperCase();
+        }
+      };
+
   protected Storage storage;
 
   public StorageMapTest() {
@@ -90,4 +123,150 @@ public abstract class StorageMapTest extends MapInterfaceTest<String, String> {
 
     return new StorageMap(storage);
   }
+
+  private HandlerRegistration recordEvents(final List<String> events) {
+    return Storage.addStorageEventHandler(
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            events.add(event.getKey() + "=" + event.getNewValue());
+          }
+        });
+  }
+
+  public void testComputeAndMerge() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageMap map = new StorageMap(storage);
+    List<String> events = new ArrayList<String>();
+    HandlerRegistration registration = recordEvents(events);
+    try {
+      assertEquals("FOO", map.computeIfAbsent("foo", UPPER_CASE));
+      assertEquals("FOO", map.computeIfAbsent("foo", UPPER_CASE));
+      assertNull(map.computeIfPresent("bar", CONCAT));
+      assertEquals("fooFOO", map.computeIfPresent("foo", CONCAT));
+      assertEquals("foofooFOO", map.compute("foo", CONCAT));
+      assertEquals("x", map.merge("bar", "x", CONCAT));
+      assertEquals("xy", map.merge("bar", "y", CONCAT));
+      assertNull(map.merge("bar", "remove", CONCAT));
+      assertNull(map.get("bar"));
+      assertEquals(
+          Arrays.asList(
+              "foo=FOO", "foo=fooFOO", "foo=foofooFOO", "bar=x", "bar=xy", "bar=null"),
+          events);
+
+      // unchanged values are not written
+      events.clear();
+      map.put("baz", "same");
+      assertEquals("same", map.compute("baz", SAME));
+      assertEquals("same", map.merge("baz", "same", SAME));
+      assertEquals("same", map.computeIfPresent("baz", SAME));
+      assertEquals(1, events.size());
+    } finally {
+      registration.removeHandler();
+    }
+  }
+
+  public void testConditionalOperations() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageMap map = new StorageMap(storage);
+    assertEquals("default", map.getOrDefault("foo", "default"));
+    assertNull(map.putIfAbsent("foo", "bar"));
+    assertEquals("bar", map.putIfAbsent("foo", "baz"));
+    assertEquals("bar", map.getOrDefault("foo", "default"));
+    assertNull(map.replace("missing", "value"));
+    assertNull(map.get("missing"));
+    assertEquals("bar", map.replace("foo", "baz"));
+    assertFalse(map.replace("foo", "bar", "qux"));
+    assertTrue(map.replace("foo", "baz", "qux"));
+    assertFalse(map.remove("foo", "baz"));
+    assertTrue(map.remove("foo", "qux"));
+    assertEquals(0, map.size());
+  }
+
+  public void testReplaceAll() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageMap map = new StorageMap(storage);
+    map.put("a", "x");
+    map.put("b", "keep");
+    List<String> events = new ArrayList<String>();
+    HandlerRegistration registration = recordEvents(events);
+    try {
+      map.replaceAll(
+          new BiFunction<String, String, String>() {
+            @Override
+            public String apply(String key, String value) {
+              return "keep".equals(value) ? value : key + value;
+            }
+          });
+    } finally {
+      registration.removeHandler();
+    }
+    assertEquals("ax", map.get("a"));
+    assertEquals("keep", map.get("b"));
+    assertEquals(Arrays.asList("a=ax"), events);
+  }
+
+  public void testSpliterator() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    StorageMap map = new StorageMap(storage);
+    for (int i = 0; i < 10; i++) {
+      map.put("key" + i, "value" + i);
+    }
+
+    Spliterator<Map.Entry<String, String>> entries = map.entrySet().spliterator();
+    // items may be removed during the traversal, so the size is only an estimate
+    assertFalse(entries.hasCharacteristics(Spliterator.SIZED));
+    assertEquals(10, entries.estimateSize());
+    Spliterator<Map.Entry<String, String>> prefix = entries.trySplit();
+    assertEquals(5, prefix.estimateSize());
+    assertEquals(5, entries.estimateSize());
+
+    final List<String> keys = new ArrayList<String>();
+    Consumer<Map.Entry<String, String>> collect =
+        new Consumer<Map.Entry<String, String>>() {
+          @Override
+          public void accept(Map.Entry<String, String> entry) {
+            assertEquals(entry.getKey().replace("key", "value"), entry.getValue());
+            keys.add(entry.getKey());
+          }
+        };
+    prefix.forEachRemaining(collect);
+    entries.forEachRemaining(collect);
+    assertEquals(10, keys.size());
+    assertTrue(keys.containsAll(map.keySet()));
+
+    // items removed after the snapshot are skipped
+    Spliterator<String> values = map.values().spliterator();
+    map.remove("key3");
+    final List<String> remaining = new ArrayList<String>();
+    values.forEachRemaining(
+        new Consumer<String>() {
+          @Override
+          public void accept(String value) {
+            remaining.add(value);
+          }
+        });
+    assertEquals(9, remaining.size());
+    assertFalse(remaining.contains("value3"));
+
+    assertEquals(9, map.keySet().stream().count());
+    assertEquals(9, map.entrySet().parallelStream().count());
+
+    // a removal between the snapshot and the traversal does not break the stream
+    Stream<String> stream = map.values().stream();
+    map.remove("key4");
+    assertEquals(8, stream.toArray().length);
+  }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.gwtproject.event.shared.HandlerRegistration;
+import org.gwtproject.storage.client.StorageMetrics.Operation;
+
+/** Tests {@link StorageMetrics}. */
+@J2clTestInput(StorageMetricsTest.class)
+public class StorageMetricsTest extends GWTTestCase {
+  private Storage storage;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.MeteredStorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage == null || !StorageMetrics.isEnabled()) {
+      return; // do not run if not supported or compiled out
+    }
+
+    storage.clear();
+    StorageMetrics.reset();
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage == null || !StorageMetrics.isEnabled()) {
+      return; // do not run if not supported or compiled out
+    }
+
+    storage.clear();
+    StorageMetrics.reset();
+  }
+
+  public void testOperationCounts() {
+    if (storage == null || !StorageMetrics.isEnabled()) {
+      return; // do not run if not supported or compiled out
+    }
+
+    StorageEvent.Handler handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {}
+        };
+    // a registered handler makes the writes read the previous values, which are not counted
+    HandlerRegistration registration = Storage.addStorageEventHandler(handler);
+    try {
+      storage.setItem("a", "1");
+      storage.setItem("b", "22");
+      assertEquals("1", storage.getItem("a"));
+      assertNull(storage.getItem("missing"));
+      assertNotNull(storage.key(0));
+      assertNull(storage.key(5));
+      assertEquals(2, storage.getLength());
+      storage.removeItem("b");
+      Map<String, String> items = new LinkedHashMap<String, String>();
+      items.put("c", "3");
+      items.put("d", "4");
+      storage.putAll(items);
+      storage.removeAll(Arrays.asList("c", "d"));
+      storage.clear();
+    } finally {
+      registration.removeHandler();
+    }
+
+    StorageMetrics.Snapshot snapshot = StorageMetrics.snapshot();
+    assertEquals(4, snapshot.getCount(Operation.SET_ITEM));
+    assertEquals(2, snapshot.getCount(Operation.GET_ITEM));
+    assertEquals(2, snapshot.getCount(Operation.KEY));
+    assertEquals(1, snapshot.getCount(Operation.LENGTH));
+    assertEquals(3, snapshot.getCount(Operation.REMOVE_ITEM));
+    assertEquals(1, snapshot.getCount(Operation.CLEAR));
+    assertEquals(4, snapshot.getLatency(Operation.SET_ITEM).getCount());
+    assertEquals(3, snapshot.getLatency(Operation.REMOVE_ITEM).getCount());
+    // "a1", "b22", "c3" and "d4" written, "1" and a one-letter key read, two bytes per char
+    assertEquals(18, snapshot.getBytesWritten());
+    assertEquals(4, snapshot.getBytesRead());
+    assertTrue(snapshot.getDispatchLatencies().containsKey(handler.getClass().getName()));
+  }
+
+  public void testSnapshotAndReset() {
+    if (storage == null || !StorageMetrics.isEnabled()) {
+      return; // do not run if not supported or compiled out
+    }
+
+    storage.setItem("a", "1");
+    StorageMetrics.Snapshot snapshot = StorageMetrics.snapshot();
+    StorageMetrics.reset();
+    storage.getItem("a");
+    assertEquals(1, snapshot.getCount(Operation.SET_ITEM));
+    assertEquals(0, snapshot.getCount(Operation.GET_ITEM));
+    assertTrue(snapshot.toJson().contains("\"SET_ITEM\":{\"count\":1,"));
+
+    snapshot = StorageMetrics.snapshot();
+    assertEquals(0, snapshot.getCount(Operation.SET_ITEM));
+    assertEquals(1, snapshot.getCount(Operation.GET_ITEM));
+    assertEquals(0, snapshot.getBytesWritten());
+    assertEquals(2, snapshot.getBytesRead());
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.j2cl.junit.apt.J2clTestInput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Tests {@link StorageObjectMap} and the codecs generated for {@link Storable} classes. */
+@J2clTestInput(StorageObjectMapTest.class)
+public class StorageObjectMapTest extends GWTTestCase {
+
+  /** A value with fields of all supported kinds. */
+  @Storable
+  public static class Item {
+    enum Kind {
+      BOOK,
+      GAME
+    }
+
+    int id;
+    long stock;
+    double price;
+    boolean available;
+    String name;
+    Integer rating;
+    Kind kind;
+    List<String> tags;
+    Item related;
+    transient String cached;
+  }
+
+  /** An older version of {@link Item}, with fewer fields. */
+  @Storable
+  public static class ItemV0 {
+    int id;
+    long stock;
+  }
+
+  /** A superclass, whose fields are stored before those of its subclasses. */
+  public static class Owned {
+    String owner;
+  }
+
+  /** A value with the remaining boxed primitives, and an inherited field. */
+  @Storable
+  public static class Measure extends Owned {
+    Byte tiny;
+    Short small;
+    Character symbol;
+    Float ratio;
+    char unit;
+  }
+
+  private Storage storage;
+  private StorageObjectMap<Item> map;
+
+  @Override
+  public String getModuleName() {
+    return "org.gwtproject.storage.StorageTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    storage = Storage.getLocalStorageIfSupported();
+    if (storage != null) {
+      storage.clear();
+      map =
+          new StorageObjectMap<Item>(
+              storage, "items", StorageObjectMapTest_Item_StorageCodec.INSTANCE);
+    }
+  }
+
+  @Override
+  protected void gwtTearDown() throws Exception {
+    if (storage != null) {
+      storage.clear();
+    }
+  }
+
+  private static Item createItem(int id) {
+    Item item = new Item();
+    item.id = id;
+    item.stock = 1L << 40;
+    item.price = 9.5;
+    item.available = true;
+    item.name = "Item \"" + id + "\"\n";
+    item.kind = Item.Kind.GAME;
+    item.tags = Arrays.asList("a", null, "c");
+    item.cached = "not stored";
+    return item;
+  }
+
+  private static void assertItemEquals(Item expected, Item actual) {
+    assertEquals(expected.id, actual.id);
+    assertEquals(expected.stock, actual.stock);
+    assertEquals(expected.price, actual.price);
+    assertEquals(expected.available, actual.available);
+    assertEquals(expected.name, actual.name);
+    assertEquals(expected.rating, actual.rating);
+    assertEquals(expected.kind, actual.kind);
+    assertEquals(expected.tags, actual.tags);
+  }
+
+  public void testCodecRoundTrip() {
+    Item item = createItem(1);
+    item.related = createItem(2);
+    item.related.rating = 5;
+
+    StorageCodec<Item> codec = StorageObjectMapTest_Item_StorageCodec.INSTANCE;
+    String encoded = codec.encode(item);
+    Item decoded = codec.decode(encoded);
+    assertItemEquals(item, decoded);
+    assertItemEquals(item.related, decoded.related);
+    assertNull(decoded.related.related);
+    assertNull(decoded.cached);
+    assertEquals(encoded, codec.encode(decoded));
+
+    assertNull(codec.decode(codec.encode(null)));
+  }
+
+  public void testPositionalEncoding() {
+    Item item = new Item();
+    item.id = 7;
+    item.price = 1.5;
+    item.name = "x";
+    item.tags = Arrays.asList("y");
+    assertEquals(
+        "[7,0,1.5,0,\"x\",null,null,[\"y\"],null]",
+        StorageObjectMapTest_Item_StorageCodec.INSTANCE.encode(item));
+  }
+
+  public void testInheritedFieldsAndBoxedPrimitives() {
+    Measure measure = new Measure();
+    measure.owner = "me";
+    measure.tiny = (byte) -1;
+    measure.small = (short) 300;
+    measure.symbol = 'A';
+    measure.ratio = 0.5f;
+    measure.unit = 'm';
+    StorageCodec<Measure> codec = StorageObjectMapTest_Measure_StorageCodec.INSTANCE;
+    String encoded = codec.encode(measure);
+    assertEquals("[\"me\",-1,300,65,0.5,109]", encoded);
+
+    Measure decoded = codec.decode(encoded);
+    assertEquals("me", decoded.owner);
+    assertEquals(Byte.valueOf((byte) -1), decoded.tiny);
+    assertEquals(Short.valueOf((short) 300), decoded.small);
+    assertEquals(Character.valueOf('A'), decoded.symbol);
+    assertEquals(Float.valueOf(0.5f), decoded.ratio);
+    assertEquals('m', decoded.unit);
+
+    // the missing trailing field keeps its initial value
+    decoded = codec.decode("[null,null,null,null,null]");
+    assertNull(decoded.owner);
+    assertNull(decoded.tiny);
+    assertNull(decoded.ratio);
+  }
+
+  public void testAddedAndRemovedFields() {
+    ItemV0 old = new ItemV0();
+    old.id = 3;
+    old.stock = 4;
+    Item item =
+        StorageObjectMapTest_Item_StorageCodec.INSTANCE.decode(
+            StorageObjectMapTest_ItemV0_StorageCodec.INSTANCE.encode(old));
+    assertEquals(3, item.id);
+    assertEquals(4, item.stock);
+    assertNull(item.name);
+
+    ItemV0 newer =
+        StorageObjectMapTest_ItemV0_StorageCodec.INSTANCE.decode(
+            StorageObjectMapTest_Item_StorageCodec.INSTANCE.encode(createItem(5)));
+    assertEquals(5, newer.id);
+    assertEquals(1L << 40, newer.stock);
+  }
+
+  public void testInvalidValue() {
+    try {
+      StorageObjectMapTest_Item_StorageCodec.INSTANCE.decode("[1,");
+      fail("truncated value should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      StorageObjectMapTest_Item_StorageCodec.INSTANCE.decode("{\"id\":1}");
+      fail("non-positional value should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testMap() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    assertNull(map.put("a", createItem(1)));
+    assertItemEquals(createItem(1), map.get("a"));
+    assertItemEquals(createItem(1), map.put("a", createItem(2)));
+    assertTrue(map.containsKey("a"));
+    assertEquals(1, map.size());
+
+    Map<String, Item> items = new LinkedHashMap<String, Item>();
+    items.put("b", createItem(3));
+    items.put("c", createItem(4));
+    map.putAll(items);
+    assertEquals(3, storage.getLength());
+
+    List<Integer> ids = new ArrayList<Integer>();
+    for (Map.Entry<String, Item> entry : map.entrySet()) {
+      ids.add(entry.getValue().id);
+    }
+    assertEquals(3, ids.size());
+    assertTrue(ids.containsAll(Arrays.asList(2, 3, 4)));
+
+    assertItemEquals(createItem(3), map.remove("b"));
+    assertNull(map.get("b"));
+    assertNull(map.remove("b"));
+    assertEquals(2, map.size());
+  }
+
+  public void testOtherItemsAreIgnored() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("a", "not an item");
+    storage.setItem("other\u001Fa", "not an item either");
+    map.put("a", createItem(1));
+    map.put("b", createItem(2));
+    // stored under the map name
+    assertNotNull(storage.getItem("items\u001Fa"));
+    assertEquals(2, map.size());
+
+    List<String> keys = new ArrayList<String>();
+    Iterator<Map.Entry<String, Item>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Item> entry = it.next();
+      keys.add(entry.getKey());
+      if (entry.getKey().equals("a")) {
+        it.remove();
+      }
+    }
+    assertEquals(Arrays.asList("a", "b"), keys);
+    assertFalse(map.containsKey("a"));
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(2, storage.getLength());
+    assertEquals("not an item", storage.getItem("a"));
+  }
+}
@@ -15,6 +15,11 @@
  */
 package org.gwtproject.storage.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.gwtproject.event.shared.HandlerRegistration;
 
 /** Tests {@link Storage}. */
@@ -199,6 +204,251 @@ public abstract class StorageTest {
     assertEquals(null, storage.getItem("foo2"));
   }
 
+  public void testBulkOperations() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    items.put("foo1", "bar1");
+    items.put("foo2", "bar2");
+    items.put("foo3", "bar3");
+    storage.putAll(items);
+    assertEquals(3, storage.getLength());
+    assertEquals("bar2", storage.getItem("foo2"));
+
+    Map<String, String> read = storage.getAll(Arrays.asList("foo3", "notset", "foo1"));
+    assertEquals(2, read.size());
+    assertEquals(Arrays.asList("foo3", "foo1"), new ArrayList<String>(read.keySet()));
+    assertEquals("bar1", read.get("foo1"));
+
+    storage.removeAll(Arrays.asList("foo1", "foo3", "notset"));
+    assertEquals(1, storage.getLength());
+    assertEquals("bar2", storage.getItem("foo2"));
+  }
+
+  public void testPutAllStorageEvents() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    storage.setItem("tpaseFoo1", "tpaseOld");
+    final List<String> changed = new ArrayList<String>();
+    handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            // events are fired once all items are written
+            assertEquals("tpaseNew2", storage.getItem("tpaseFoo2"));
+            changed.add(event.getKey() + "=" + event.getOldValue() + ">" + event.getNewValue());
+          }
+        };
+    storage.addStorageEventHandler(handler);
+
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    items.put("tpaseFoo1", "tpaseNew1");
+    items.put("tpaseFoo2", "tpaseNew2");
+    storage.putAll(items);
+    assertEquals(
+        Arrays.asList("tpaseFoo1=tpaseOld>tpaseNew1", "tpaseFoo2=null>tpaseNew2"), changed);
+  }
+
+  public void testWriteDeduplication() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    final List<String> changed = new ArrayList<String>();
+    handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            changed.add(event.getKey() + "=" + event.getNewValue());
+          }
+        };
+    storage.addStorageEventHandler(handler);
+    storage.setItem("twdFoo", "bar");
+    storage.setItem("twdFoo", "bar");
+    assertEquals(2, changed.size());
+
+    storage.setWriteDeduplication(true);
+    try {
+      assertTrue(storage.isWriteDeduplication());
+      storage.setItem("twdFoo", "bar");
+      storage.setItem("twdFoo", "baz");
+      Map<String, String> items = new LinkedHashMap<String, String>();
+      items.put("twdFoo", "baz");
+      items.put("twdFoo2", "qux");
+      storage.putAll(items);
+      assertEquals(Arrays.asList("twdFoo=bar", "twdFoo=bar", "twdFoo=baz", "twdFoo2=qux"), changed);
+      assertEquals(2, storage.getSuppressedWriteCount());
+    } finally {
+      storage.setWriteDeduplication(false);
+    }
+    assertEquals(0, storage.getSuppressedWriteCount());
+  }
+
+  public void testScan() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    for (int i = 0; i < 10; i++) {
+      storage.setItem("tsFoo" + i, "bar" + i);
+    }
+    storage.setItem("tsOther", "baz");
+
+    StoragePage page = storage.scan(null, 4, "tsFoo");
+    assertEquals(Arrays.asList("tsFoo0", "tsFoo1", "tsFoo2", "tsFoo3"), keys(page));
+    assertEquals("bar0", page.getItems().get("tsFoo0"));
+    assertTrue(page.hasMore());
+
+    // changes between pages neither shift the next pages nor duplicate items
+    storage.removeItem("tsFoo1");
+    storage.removeItem("tsFoo4");
+    storage.setItem("tsFoo00", "new");
+    storage.setItem("tsFoo55", "new");
+    page = storage.scan(page.getCursor(), 4, "tsFoo");
+    assertEquals(Arrays.asList("tsFoo5", "tsFoo55", "tsFoo6", "tsFoo7"), keys(page));
+    page = storage.scan(page.getCursor(), 4, "tsFoo");
+    assertEquals(Arrays.asList("tsFoo8", "tsFoo9"), keys(page));
+    assertFalse(page.hasMore());
+    assertNull(page.getCursor());
+
+    assertEquals(11, storage.scan(null, 100, null).getItems().size());
+  }
+
+  public void testCompareAndSet() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    assertNull(storage.getVersionedItem("tcasFoo"));
+    assertFalse(storage.compareAndSet("tcasFoo", 1, "tcasBar"));
+    assertTrue(storage.compareAndSet("tcasFoo", 0, "tcasBar"));
+    assertEquals("tcasBar", storage.getVersionedItem("tcasFoo").getValue());
+    assertEquals(1, storage.getVersionedItem("tcasFoo").getVersion());
+
+    // a window which read the first version loses against the one which updated it
+    assertTrue(storage.compareAndSet("tcasFoo", 1, "tcasBaz"));
+    assertFalse(storage.compareAndSet("tcasFoo", 1, "tcasQux"));
+    assertEquals("2:tcasBaz", storage.getVersionedItem("tcasFoo").toString());
+
+    // items not written by compareAndSet have the version 0
+    storage.setItem("tcasPlain", "tcasBar");
+    assertEquals(0, storage.getVersionedItem("tcasPlain").getVersion());
+    assertTrue(storage.compareAndSet("tcasPlain", 0, "tcasBaz"));
+    assertEquals("1:tcasBaz", storage.getVersionedItem("tcasPlain").toString());
+
+    // the critical section leaves nothing behind
+    assertEquals(2, storage.getLength());
+
+    // another window in the critical section makes the update fail until its lock expires
+    storage.setItem(StorageImpl.LOCK_Y, "other:" + (System.currentTimeMillis() + 60000));
+    assertFalse(storage.compareAndSet("tcasFoo", 2, "tcasQux"));
+    // the losing attempt leaves the lock of the other window alone, and nothing of its own
+    assertTrue(storage.getItem(StorageImpl.LOCK_Y).startsWith("other:"));
+    assertNull(storage.getItem(StorageImpl.LOCK_X));
+    storage.setItem(StorageImpl.LOCK_Y, "other:" + (System.currentTimeMillis() - 1));
+    assertTrue(storage.compareAndSet("tcasFoo", 2, "tcasQux"));
+    assertEquals("3:tcasQux", storage.getVersionedItem("tcasFoo").toString());
+    assertEquals(2, storage.getLength());
+  }
+
+  public void testLockInterleaving() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    final Map<String, String> items = new LinkedHashMap<String, String>();
+    final boolean[] interleaved = new boolean[1];
+    final StorageArea area =
+        new StorageArea() {
+          @Override
+          public void clear() {
+            items.clear();
+          }
+
+          @Override
+          public String getItem(String key) {
+            return items.get(key);
+          }
+
+          @Override
+          public int getLength() {
+            return items.size();
+          }
+
+          @Override
+          public String key(int index) {
+            return new ArrayList<String>(items.keySet()).get(index);
+          }
+
+          @Override
+          public void removeItem(String key) {
+            items.remove(key);
+          }
+
+          @Override
+          public void setItem(String key, String data) {
+            items.put(key, data);
+          }
+        };
+    StorageArea interleaving =
+        new StorageArea() {
+          @Override
+          public void clear() {
+            area.clear();
+          }
+
+          @Override
+          public String getItem(String key) {
+            String value = area.getItem(key);
+            if (StorageImpl.LOCK_Y.equals(key) && !interleaved[0]) {
+              // a wrote x and read y, then b runs its whole attempt
+              interleaved[0] = true;
+              assertTrue(StorageImpl.tryLock(area, "b"));
+            }
+            return value;
+          }
+
+          @Override
+          public int getLength() {
+            return area.getLength();
+          }
+
+          @Override
+          public String key(int index) {
+            return area.key(index);
+          }
+
+          @Override
+          public void removeItem(String key) {
+            area.removeItem(key);
+          }
+
+          @Override
+          public void setItem(String key, String data) {
+            area.setItem(key, data);
+          }
+        };
+
+    // a overwrites the y of b, which is in the critical section, then reads the x of b and loses
+    assertFalse(StorageImpl.tryLock(interleaving, "a"));
+    assertTrue(interleaved[0]);
+    assertEquals("b", area.getItem(StorageImpl.LOCK_X));
+    // the y a wrote keeps the others out while b is in the critical section
+    assertTrue(area.getItem(StorageImpl.LOCK_Y).startsWith("a:"));
+    assertFalse(StorageImpl.tryLock(area, "c"));
+
+    // b leaving clears y, even though it names a, so that c does not wait for it to expire
+    StorageImpl.unlock(area, "b");
+    assertNull(area.getItem(StorageImpl.LOCK_Y));
+    assertTrue(StorageImpl.tryLock(area, "c"));
+    StorageImpl.unlock(area, "c");
+    assertEquals(0, area.getLength());
+  }
+
   public void testClearStorageEvent() {
     if (storage == null) {
       return; // do not run if not supported
@@ -399,6 +649,121 @@ public abstract class StorageTest {
     storage.clear();
   }
 
+  public void testBatchHandlerCoalescesChanges() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    storage.setItem("tbhcFoo", "tbhcBar0");
+
+    final HandlerRegistration[] registration = new HandlerRegistration[1];
+    registration[0] =
+        Storage.addStorageEventBatchHandler(
+            new StorageEvent.BatchHandler() {
+              @Override
+              public void onStorageChanges(List<StorageEvent> events) {
+                registration[0].removeHandler();
+                assertEquals(2, events.size());
+                assertEquals("tbhcFoo", events.get(0).getKey());
+                assertEquals("tbhcBar0", events.get(0).getOldValue());
+                assertEquals("tbhcBar50", events.get(0).getNewValue());
+                assertEquals(storage, events.get(0).getStorageArea());
+                assertEquals("tbhcBaz", events.get(1).getKey());
+                assertNull(events.get(1).getOldValue());
+                assertEquals("tbhcQux", events.get(1).getNewValue());
+
+                finishTest();
+              }
+            });
+    for (int i = 1; i <= 50; i++) {
+      storage.setItem("tbhcFoo", "tbhcBar" + i);
+    }
+    storage.setItem("tbhcBaz", "tbhcQux");
+  }
+
+  public void testSlowEventHandlerReported() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    final List<Throwable> reported = new ArrayList<Throwable>();
+    org.gwtproject.core.client.GWT.UncaughtExceptionHandler previous =
+        org.gwtproject.core.client.GWT.getUncaughtExceptionHandler();
+    org.gwtproject.core.client.GWT.setUncaughtExceptionHandler(
+        new org.gwtproject.core.client.GWT.UncaughtExceptionHandler() {
+          @Override
+          public void onUncaughtException(Throwable e) {
+            reported.add(e);
+          }
+        });
+    handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            busyWait(5);
+          }
+        };
+    storage.addStorageEventHandler(handler);
+    Storage.setEventHandlerBudget(1);
+    try {
+      storage.setItem("tsehrFoo", "tsehrBar");
+    } finally {
+      Storage.setEventHandlerBudget(0);
+      org.gwtproject.core.client.GWT.setUncaughtExceptionHandler(previous);
+    }
+
+    assertEquals(1, reported.size());
+    SlowStorageEventHandlerException e = (SlowStorageEventHandlerException) reported.get(0);
+    assertSame(handler, e.getHandler());
+    assertEquals("tsehrFoo", e.getKey());
+    assertTrue(e.getElapsedMillis() > e.getBudgetMillis());
+    assertFalse(e.isDemoted());
+  }
+
+  public void testSlowEventHandlerDemoted() {
+    if (storage == null) {
+      return; // do not run if not supported
+    }
+
+    delayTestFinish(2000);
+    final int[] calls = new int[] {0};
+    final org.gwtproject.core.client.GWT.UncaughtExceptionHandler previous =
+        org.gwtproject.core.client.GWT.getUncaughtExceptionHandler();
+    org.gwtproject.core.client.GWT.setUncaughtExceptionHandler(
+        new org.gwtproject.core.client.GWT.UncaughtExceptionHandler() {
+          @Override
+          public void onUncaughtException(Throwable e) {
+            assertTrue(((SlowStorageEventHandlerException) e).isDemoted());
+          }
+        });
+    handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            calls[0]++;
+            if (calls[0] == 1) {
+              busyWait(5);
+            } else {
+              assertEquals("tsehdFoo2", event.getKey());
+              Storage.setEventHandlerBudget(0);
+              Storage.setSlowEventHandlerDemotion(0);
+              org.gwtproject.core.client.GWT.setUncaughtExceptionHandler(previous);
+              finishTest();
+            }
+          }
+        };
+    storage.addStorageEventHandler(handler);
+    Storage.setEventHandlerBudget(1);
+    Storage.setSlowEventHandlerDemotion(1);
+
+    storage.setItem("tsehdFoo1", "tsehdBar");
+    assertEquals(1, calls[0]);
+    storage.setItem("tsehdFoo2", "tsehdBar");
+    // the demoted handler must not have been called within the write
+    assertEquals(1, calls[0]);
+  }
+
   public void testSupported() {
     // test the isxxxSupported() call
     if (isFirefox35OrLater()) {
@@ -414,4 +779,15 @@ public abstract class StorageTest {
       assertFalse(Storage.isSupported());
     }
   }
+
+  private static List<String> keys(StoragePage page) {
+    return new ArrayList<String>(page.getItems().keySet());
+  }
+
+  private static void busyWait(int millis) {
+    double end = System.currentTimeMillis() + millis;
+    while (System.currentTimeMillis() <= end) {
+      // spin
+    }
+  }
 }
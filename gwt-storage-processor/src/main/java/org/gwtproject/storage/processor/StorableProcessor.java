@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a <code>StorageCodec</code> for each class annotated with <code>@Storable</code>.
+ *
+ * <p>For a class <code>Foo</code>, the generated <code>Foo_StorageCodec</code> writes the fields of
+ * a value as a positional array, in declaration order, those inherited first, using direct field
+ * access only. Fields of a primitive type are written with the matching <code>PositionalWriter
+ * </code> method; all other fields go through a codec that is created once, in a static field of
+ * the generated class.
+ */
+public class StorableProcessor extends AbstractProcessor {
+  private static final String STORABLE = "org.gwtproject.storage.client.Storable";
+  private static final String CLIENT_PACKAGE = "org.gwtproject.storage.client";
+
+  /*
+   * Reports an unsupported @Storable class or field
+   */
+  private static class InvalidStorableException extends RuntimeException {
+    private final Element element;
+
+    InvalidStorableException(String message, Element element) {
+      super(message);
+      this.element = element;
+    }
+  }
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(STORABLE);
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement storable = processingEnv.getElementUtils().getTypeElement(STORABLE);
+    if (storable == null) {
+      return false;
+    }
+    for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(storable))) {
+      try {
+        generate(type);
+      } catch (InvalidStorableException e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+      } catch (IOException e) {
+        processingEnv
+            .getMessager()
+            .printMessage(Diagnostic.Kind.ERROR, "Cannot write codec: " + e.getMessage(), type);
+      }
+    }
+    return true;
+  }
+
+  private void generate(TypeElement type) throws IOException {
+    checkType(type);
+    String packageName =
+        processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    String codecName = codecName(type);
+    String typeName = type.getQualifiedName().toString();
+
+    StringBuilder codecs = new StringBuilder();
+    StringBuilder write = new StringBuilder();
+    StringBuilder read = new StringBuilder();
+    Set<String> names = new HashSet<String>();
+    for (VariableElement field : storedFields(type)) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)) {
+        throw new InvalidStorableException(
+            "Fields of @Storable classes must be neither private nor final", field);
+      }
+      if (!modifiers.contains(Modifier.PUBLIC)
+          && !processingEnv
+              .getElementUtils()
+              .getPackageOf(field)
+              .getQualifiedName()
+              .contentEquals(packageName)) {
+        throw new InvalidStorableException(
+            "Inherited fields of @Storable classes must be public or in the same package", field);
+      }
+      String name = field.getSimpleName().toString();
+      if (!names.add(name)) {
+        throw new InvalidStorableException(
+            "Fields of @Storable classes must not hide inherited fields", field);
+      }
+      // as a member of the @Storable class, e.g. with the type arguments of a generic superclass
+      TypeMirror fieldType =
+          processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), field);
+      String readValue;
+      if (fieldType.getKind().isPrimitive()) {
+        write.append("    writer.").append(primitiveWrite(fieldType, field));
+        write.append("(value.").append(name).append(");\n");
+        readValue = primitiveRead(fieldType);
+      } else {
+        String codec = "CODEC_" + name;
+        codecs.append("  private static final StorageCodec<").append(fieldType).append("> ");
+        codecs.append(codec).append(" =\n      ").append(codecFor(fieldType, field));
+        codecs.append(";\n");
+        write.append("    ").append(codec).append(".write(writer, value.").append(name);
+        write.append(");\n");
+        readValue = codec + ".read(reader)";
+      }
+      // fields added to the class later are missing in values stored before
+      read.append("    if (reader.hasNext()) {\n");
+      read.append("      value.").append(name).append(" = ").append(readValue).append(";\n");
+      read.append("    }\n");
+    }
+
+    StringBuilder source = new StringBuilder();
+    if (!packageName.isEmpty()) {
+      source.append("package ").append(packageName).append(";\n\n");
+    }
+    source.append("import ").append(CLIENT_PACKAGE).append(".PositionalReader;\n");
+    source.append("import ").append(CLIENT_PACKAGE).append(".PositionalWriter;\n");
+    source.append("import ").append(CLIENT_PACKAGE).append(".StorageCodec;\n");
+    source.append("import ").append(CLIENT_PACKAGE).append(".StorageCodecs;\n\n");
+    source.append("/** Generated by ").append(StorableProcessor.class.getName()).append(". */\n");
+    source.append("public final class ").append(codecName);
+    source.append(" implements StorageCodec<").append(typeName).append("> {\n");
+    // INSTANCE comes first so that codecs of (mutually) recursive types can refer to it
+    source.append("  public static final ").append(codecName).append(" INSTANCE = new ");
+    source.append(codecName).append("();\n\n");
+    if (codecs.length() > 0) {
+      source.append(codecs).append('\n');
+    }
+    source.append("  private ").append(codecName).append("() {}\n\n");
+    source.append("  @Override\n");
+    source.append("  public void write(PositionalWriter writer, ").append(typeName);
+    source.append(" value) {\n");
+    source.append("    if (value == null) {\n");
+    source.append("      writer.writeNull();\n");
+    source.append("      return;\n");
+    source.append("    }\n");
+    source.append("    writer.beginArray();\n");
+    source.append(write);
+    source.append("    writer.endArray();\n");
+    source.append("  }\n\n");
+    source.append("  @Override\n");
+    source.append("  public ").append(typeName).append(" read(PositionalReader reader) {\n");
+    source.append("    if (reader.readNull()) {\n");
+    source.append("      return null;\n");
+    source.append("    }\n");
+    source.append("    ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+    source.append("    reader.beginArray();\n");
+    source.append(read);
+    source.append("    reader.endArray();\n");
+    source.append("    return value;\n");
+    source.append("  }\n");
+    source.append("}\n");
+
+    String qualifiedName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+    try (Writer out = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+      out.write(source.toString());
+    }
+  }
+
+  private void checkType(TypeElement type) {
+    if (type.getKind() != ElementKind.CLASS) {
+      throw new InvalidStorableException("@Storable can only be used on classes", type);
+    }
+    Set<Modifier> modifiers = type.getModifiers();
+    if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+      throw new InvalidStorableException(
+          "@Storable classes must be neither abstract nor private", type);
+    }
+    if (type.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC)) {
+      throw new InvalidStorableException("Nested @Storable classes must be static", type);
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new InvalidStorableException("@Storable classes must not be generic", type);
+    }
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        return;
+      }
+    }
+    throw new InvalidStorableException(
+        "@Storable classes must have a non-private no-argument constructor", type);
+  }
+
+  /*
+   * Returns the non-static, non-transient fields of a class and its superclasses, those of the
+   * superclasses first, each in declaration order
+   */
+  private static List<VariableElement> storedFields(TypeElement type) {
+    List<VariableElement> fields = new ArrayList<VariableElement>();
+    TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() == TypeKind.DECLARED) {
+      TypeElement superElement = (TypeElement) ((DeclaredType) superclass).asElement();
+      if (!superElement.getQualifiedName().contentEquals("java.lang.Object")) {
+        fields.addAll(storedFields(superElement));
+      }
+    }
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.TRANSIENT)) {
+        fields.add(field);
+      }
+    }
+    return fields;
+  }
+
+  /*
+   * Foo -> Foo_StorageCodec, Outer.Inner -> Outer_Inner_StorageCodec
+   */
+  private static String codecName(TypeElement type) {
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    Element enclosing = type.getEnclosingElement();
+    while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+      name.insert(0, enclosing.getSimpleName() + "_");
+      enclosing = enclosing.getEnclosingElement();
+    }
+    return name.append("_StorageCodec").toString();
+  }
+
+  private static String primitiveWrite(TypeMirror type, Element field) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return "writeBoolean";
+      case BYTE:
+      case SHORT:
+      case CHAR:
+      case INT:
+        return "writeInt";
+      case LONG:
+        return "writeLong";
+      case FLOAT:
+      case DOUBLE:
+        return "writeDouble";
+      default:
+        throw new InvalidStorableException("Unsupported field type: " + type, field);
+    }
+  }
+
+  private static String primitiveRead(TypeMirror type) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return "reader.readBoolean()";
+      case BYTE:
+      case SHORT:
+      case CHAR:
+        return "(" + type + ") reader.readInt()";
+      case INT:
+        return "reader.readInt()";
+      case LONG:
+        return "reader.readLong()";
+      case FLOAT:
+        return "(float) reader.readDouble()";
+      default:
+        return "reader.readDouble()";
+    }
+  }
+
+  private String codecFor(TypeMirror type, Element field) {
+    if (type.getKind() != TypeKind.DECLARED) {
+      throw new InvalidStorableException("Unsupported field type: " + type, field);
+    }
+    TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+    String name = element.getQualifiedName().toString();
+    switch (name) {
+      case "java.lang.String":
+        return "StorageCodecs.STRING";
+      case "java.lang.Boolean":
+        return "StorageCodecs.BOOLEAN";
+      case "java.lang.Byte":
+        return "StorageCodecs.BYTE";
+      case "java.lang.Short":
+        return "StorageCodecs.SHORT";
+      case "java.lang.Character":
+        return "StorageCodecs.CHARACTER";
+      case "java.lang.Integer":
+        return "StorageCodecs.INTEGER";
+      case "java.lang.Long":
+        return "StorageCodecs.LONG";
+      case "java.lang.Float":
+        return "StorageCodecs.FLOAT";
+      case "java.lang.Double":
+        return "StorageCodecs.DOUBLE";
+      case "java.util.List":
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1) {
+          throw new InvalidStorableException("Lists must have a type argument", field);
+        }
+        return "StorageCodecs.forList(" + codecFor(arguments.get(0), field) + ")";
+      default:
+        break;
+    }
+    if (element.getKind() == ElementKind.ENUM) {
+      return "StorageCodecs.forEnum(" + name + ".values())";
+    }
+    if (isStorable(element)) {
+      String packageName =
+          processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+      return (packageName.isEmpty() ? "" : packageName + ".") + codecName(element) + ".INSTANCE";
+    }
+    throw new InvalidStorableException("Unsupported field type: " + type, field);
+  }
+
+  private static boolean isStorable(TypeElement element) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      Element annotationType = annotation.getAnnotationType().asElement();
+      if (((TypeElement) annotationType).getQualifiedName().contentEquals(STORABLE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
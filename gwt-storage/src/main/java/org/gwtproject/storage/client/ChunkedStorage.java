@@ -0,0 +1,467 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import org.gwtproject.core.client.Scheduler;
+
+/**
+ * Stores large string values in a {@link Storage} split across several items ("chunks").
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>A chunked value is described by a manifest stored under its own key, while its chunks are
+ * stored under derived keys (the key, the <code>U+001F</code> separator, a generation and the
+ * chunk index). Each write uses its own unique generation, and the value is only published by
+ * rewriting the manifest, so readers never observe a partially written value, concurrent writers
+ * of the same key (the last one to close wins) never mix their chunks, and a failed write (e.g.
+ * because the quota is exceeded) leaves the previous value intact.
+ *
+ * <p>Chunks can be read individually ({@link #getChunk(String, int)}, {@link #getRange(String,
+ * int, int)}) or streamed ({@link #openReader(String)}), and values can be written in pieces
+ * ({@link #openWriter(String)}) or incrementally across event loop ticks ({@link
+ * #setValueIncrementally(String, String, Callback)}) so that no single task blocks the UI.
+ *
+ * <p>Plain (non-chunked) items are read as a single chunk, so a value can be migrated to chunked
+ * storage transparently.
+ */
+public class ChunkedStorage {
+
+  /** Receives the outcome of an incremental write. */
+  public interface Callback {
+    void onSuccess();
+
+    void onFailure(Throwable caught);
+  }
+
+  /** The default number of UTF-16 code units per chunk. */
+  public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+  private static final String MANIFEST_PREFIX = "\u0000chunked:";
+  private static final char SEPARATOR = '\u001F';
+  // Time an incremental write may spend per tick
+  private static final double SLICE_MILLIS = 8;
+
+  private final Storage storage;
+  private final int chunkSize;
+
+  /**
+   * Creates a chunked view of the given storage, using chunks of {@link #DEFAULT_CHUNK_SIZE}.
+   *
+   * @param storage the storage holding the values
+   */
+  public ChunkedStorage(Storage storage) {
+    this(storage, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a chunked view of the given storage.
+   *
+   * @param storage the storage holding the values
+   * @param chunkSize the number of UTF-16 code units per chunk
+   */
+  public ChunkedStorage(Storage storage, int chunkSize) {
+    assert storage != null : "storage cannot be null";
+    assert chunkSize > 0 : "chunkSize must be positive";
+    this.storage = storage;
+    this.chunkSize = chunkSize;
+  }
+
+  /** Describes the chunks of a stored value. */
+  private static final class Manifest {
+    // the id of the write which stored the chunks, null for a plain item
+    final String generation;
+    final int chunkCount;
+    final int length;
+    final int chunkSize;
+    // the value of a plain item, read as a single chunk
+    final String plainValue;
+
+    Manifest(String generation, int chunkCount, int length, int chunkSize, String plainValue) {
+      this.generation = generation;
+      this.chunkCount = chunkCount;
+      this.length = length;
+      this.chunkSize = chunkSize;
+      this.plainValue = plainValue;
+    }
+
+    String encode() {
+      return MANIFEST_PREFIX + generation + ":" + chunkCount + ":" + length + ":" + chunkSize;
+    }
+  }
+
+  private Manifest readManifest(String key) {
+    String item = storage.getItem(key);
+    if (item == null) {
+      return null;
+    }
+    if (!item.startsWith(MANIFEST_PREFIX)) {
+      return new Manifest(null, 1, item.length(), item.length(), item);
+    }
+    String[] fields = item.substring(MANIFEST_PREFIX.length()).split(":");
+    return new Manifest(
+        fields[0],
+        Integer.parseInt(fields[1]),
+        Integer.parseInt(fields[2]),
+        Integer.parseInt(fields[3]),
+        null);
+  }
+
+  private static String chunkKey(String key, String generation, int index) {
+    return key + SEPARATOR + generation + SEPARATOR + index;
+  }
+
+  private String readChunk(String key, Manifest manifest, int index) {
+    if (manifest.plainValue != null) {
+      return manifest.plainValue;
+    }
+    String chunk = storage.getItem(chunkKey(key, manifest.generation, index));
+    if (chunk == null) {
+      throw new IllegalStateException("Missing chunk " + index + " of " + key);
+    }
+    return chunk;
+  }
+
+  private void removeChunks(String key, String generation, int count) {
+    for (int i = 0; i < count; i++) {
+      storage.removeItem(chunkKey(key, generation, i));
+    }
+  }
+
+  /**
+   * Returns the value associated with the specified key, reassembling its chunks.
+   *
+   * @param key the key to a value in the Storage
+   * @return the value, or <code>null</code> if there is none
+   */
+  public String getValue(String key) {
+    Manifest manifest = readManifest(key);
+    if (manifest == null) {
+      return null;
+    }
+    StringBuilder value = new StringBuilder(manifest.length);
+    for (int i = 0; i < manifest.chunkCount; i++) {
+      value.append(readChunk(key, manifest, i));
+    }
+    return value.toString();
+  }
+
+  /**
+   * Returns the length of the value associated with the specified key, without reading its chunks.
+   *
+   * @param key the key to a value in the Storage
+   * @return the length of the value, or <code>-1</code> if there is none
+   */
+  public int getLength(String key) {
+    Manifest manifest = readManifest(key);
+    return manifest == null ? -1 : manifest.length;
+  }
+
+  /**
+   * Returns the number of chunks of the value associated with the specified key.
+   *
+   * @param key the key to a value in the Storage
+   * @return the number of chunks, or <code>0</code> if there is no value
+   */
+  public int getChunkCount(String key) {
+    Manifest manifest = readManifest(key);
+    return manifest == null ? 0 : manifest.chunkCount;
+  }
+
+  /**
+   * Returns a single chunk of the value associated with the specified key.
+   *
+   * @param key the key to a value in the Storage
+   * @param index the index of the chunk
+   * @return the chunk, or <code>null</code> if there is no value or no such chunk
+   */
+  public String getChunk(String key, int index) {
+    Manifest manifest = readManifest(key);
+    if (manifest == null || index < 0 || index >= manifest.chunkCount) {
+      return null;
+    }
+    return readChunk(key, manifest, index);
+  }
+
+  /**
+   * Returns a range of the value associated with the specified key, only reading the chunks
+   * covering it.
+   *
+   * @param key the key to a value in the Storage
+   * @param start the index of the first character, inclusive
+   * @param end the index of the last character, exclusive
+   * @return the range, or <code>null</code> if there is no value
+   * @throws IndexOutOfBoundsException if the range is not within the value
+   */
+  public String getRange(String key, int start, int end) {
+    Manifest manifest = readManifest(key);
+    if (manifest == null) {
+      return null;
+    }
+    if (start < 0 || end > manifest.length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Range [" + start + ", " + end + ") of a value of length " + manifest.length);
+    }
+    if (manifest.plainValue != null) {
+      return manifest.plainValue.substring(start, end);
+    }
+    StringBuilder range = new StringBuilder(end - start);
+    for (int i = start / manifest.chunkSize; range.length() < end - start; i++) {
+      String chunk = readChunk(key, manifest, i);
+      int chunkStart = i * manifest.chunkSize;
+      range.append(
+          chunk,
+          Math.max(start - chunkStart, 0),
+          Math.min(end - chunkStart, chunk.length()));
+    }
+    return range.toString();
+  }
+
+  /**
+   * Sets the value associated with the specified key, splitting it into chunks.
+   *
+   * @param key the key to a value in the Storage
+   * @param value the value associated with the key
+   * @throws RuntimeException if the value could not be written, in which case the previous value is
+   *     left intact
+   */
+  public void setValue(String key, String value) {
+    openWriter(key).write(value).close();
+  }
+
+  /**
+   * Sets the value associated with the specified key, writing a few chunks per event loop tick.
+   *
+   * <p>The previous value stays readable until the new one is completely written.
+   *
+   * @param key the key to a value in the Storage
+   * @param value the value associated with the key
+   * @param callback notified once the value is published, or of the failure
+   */
+  public void setValueIncrementally(String key, final String value, final Callback callback) {
+    final ValueWriter writer = openWriter(key);
+    Scheduler.get()
+        .scheduleIncremental(
+            new Scheduler.RepeatingCommand() {
+              private int offset;
+
+              @Override
+              public boolean execute() {
+                try {
+                  double deadline = StorageClock.now() + SLICE_MILLIS;
+                  while (offset < value.length() && StorageClock.now() < deadline) {
+                    int end = Math.min(offset + chunkSize, value.length());
+                    writer.write(value.substring(offset, end));
+                    offset = end;
+                  }
+                  if (offset < value.length()) {
+                    return true;
+                  }
+                  writer.close();
+                } catch (RuntimeException e) {
+                  callback.onFailure(e);
+                  return false;
+                }
+                callback.onSuccess();
+                return false;
+              }
+            });
+  }
+
+  /**
+   * Removes the value associated with the specified key and all its chunks.
+   *
+   * @param key the key to a value in the Storage
+   */
+  public void removeValue(String key) {
+    Manifest manifest = readManifest(key);
+    if (manifest == null) {
+      return;
+    }
+    storage.removeItem(key);
+    removeChunks(key, manifest.generation, manifest.plainValue == null ? manifest.chunkCount : 0);
+  }
+
+  /**
+   * Opens a reader streaming the chunks of the value associated with the specified key.
+   *
+   * @param key the key to a value in the Storage
+   * @return the reader, or <code>null</code> if there is no value
+   */
+  public ValueReader openReader(String key) {
+    Manifest manifest = readManifest(key);
+    return manifest == null ? null : new ValueReader(key, manifest);
+  }
+
+  /**
+   * Opens a writer replacing the value associated with the specified key. The new value becomes
+   * visible when the writer is closed.
+   *
+   * @param key the key to a value in the Storage
+   * @return the writer
+   */
+  public ValueWriter openWriter(String key) {
+    return new ValueWriter(key);
+  }
+
+  /** Streams the chunks of a value; the value must not be replaced while it is read. */
+  public final class ValueReader {
+    private final String key;
+    private final Manifest manifest;
+    private int nextChunk;
+    private String current = "";
+    private int position;
+
+    private ValueReader(String key, Manifest manifest) {
+      this.key = key;
+      this.manifest = manifest;
+    }
+
+    /** Returns the total length of the value. */
+    public int getLength() {
+      return manifest.length;
+    }
+
+    /** Returns <code>true</code> if {@link #nextChunk()} has more chunks to return. */
+    public boolean hasNextChunk() {
+      return nextChunk < manifest.chunkCount;
+    }
+
+    /**
+     * Returns the rest of the current chunk, or the next chunk if the current one was consumed.
+     *
+     * @return the chunk, or <code>null</code> at the end of the value
+     */
+    public String nextChunk() {
+      if (position < current.length()) {
+        String rest = current.substring(position);
+        position = current.length();
+        return rest;
+      }
+      if (!hasNextChunk()) {
+        return null;
+      }
+      current = readChunk(key, manifest, nextChunk++);
+      position = current.length();
+      return current;
+    }
+
+    /**
+     * Reads characters into a portion of an array, like {@link java.io.Reader#read(char[], int,
+     * int)}.
+     *
+     * @return the number of characters read, or <code>-1</code> at the end of the value
+     */
+    public int read(char[] buffer, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (position == current.length()) {
+        if (!hasNextChunk()) {
+          return -1;
+        }
+        current = readChunk(key, manifest, nextChunk++);
+        position = 0;
+      }
+      int count = Math.min(length, current.length() - position);
+      current.getChars(position, position + count, buffer, offset);
+      position += count;
+      return count;
+    }
+  }
+
+  /**
+   * Writes a value chunk by chunk. The value replaces the previous one when the writer is closed.
+   */
+  public final class ValueWriter {
+    private final String key;
+    private final String generation;
+    private final StringBuilder buffer = new StringBuilder();
+    private int chunkCount;
+    private int length;
+    private boolean closed;
+
+    private ValueWriter(String key) {
+      this.key = key;
+      // unique per writer, so that concurrent writers of the same key, in this window or in
+      // others, never write the same chunks
+      this.generation =
+          Long.toString(System.currentTimeMillis(), 36)
+              + Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+    }
+
+    /**
+     * Appends to the value, writing every completed chunk.
+     *
+     * @param text the text to append
+     * @return this writer
+     * @throws RuntimeException if a chunk could not be written, in which case the writer is aborted
+     */
+    public ValueWriter write(String text) {
+      assert !closed : "writer is closed";
+      buffer.append(text);
+      length += text.length();
+      while (buffer.length() >= chunkSize) {
+        writeChunk(buffer.substring(0, chunkSize));
+        buffer.delete(0, chunkSize);
+      }
+      return this;
+    }
+
+    /**
+     * Writes the last chunk and publishes the value, then removes the chunks of the previous one.
+     *
+     * @throws RuntimeException if a chunk could not be written, in which case the writer is aborted
+     */
+    public void close() {
+      assert !closed : "writer is closed";
+      if (buffer.length() > 0 || chunkCount == 0) {
+        writeChunk(buffer.toString());
+        buffer.setLength(0);
+      }
+      // the value replaced, which may have been published by another writer since this one opened
+      Manifest previous;
+      try {
+        previous = readManifest(key);
+        Manifest manifest = new Manifest(generation, chunkCount, length, chunkSize, null);
+        storage.setItem(key, manifest.encode());
+      } catch (RuntimeException e) {
+        abort();
+        throw e;
+      }
+      closed = true;
+      if (previous != null && previous.plainValue == null) {
+        removeChunks(key, previous.generation, previous.chunkCount);
+      }
+    }
+
+    /** Discards the chunks written so far, leaving the previous value intact. */
+    public void abort() {
+      closed = true;
+      removeChunks(key, generation, chunkCount);
+    }
+
+    private void writeChunk(String chunk) {
+      try {
+        storage.setItem(chunkKey(key, generation, chunkCount), chunk);
+      } catch (RuntimeException e) {
+        abort();
+        throw e;
+      }
+      chunkCount++;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * A fixed-size latency histogram with a bounded relative error, in the spirit of HdrHistogram.
+ *
+ * <p>Values are recorded in microseconds. Values below 16&micro;s are counted exactly; above, each
+ * power of two is split into 16 linear sub-buckets, which bounds the relative error of the reported
+ * percentiles to about 6%. The histogram covers values up to {@link Integer#MAX_VALUE}
+ * microseconds (about 35 minutes) in 448 buckets; larger values are clamped.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (31 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final int[] counts;
+  private long totalCount;
+  private double totalMicros;
+  private int min = Integer.MAX_VALUE;
+  private int max;
+
+  /** Creates an empty histogram. */
+  public LatencyHistogram() {
+    counts = new int[BUCKETS];
+  }
+
+  private LatencyHistogram(LatencyHistogram other) {
+    counts = other.counts.clone();
+    totalCount = other.totalCount;
+    totalMicros = other.totalMicros;
+    min = other.min;
+    max = other.max;
+  }
+
+  private static int indexOf(int value) {
+    if (value < SUB_BUCKETS) {
+      return value;
+    }
+    int exponent = 31 - Integer.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + ((value >> shift) - SUB_BUCKETS);
+  }
+
+  private static int highestValueAt(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    long highest = ((long) (subBucket + 1) << shift) - 1;
+    return (int) Math.min(highest, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Records a latency.
+   *
+   * @param micros the latency in microseconds; negative values are recorded as 0
+   */
+  public void record(double micros) {
+    int value = (int) Math.max(0, Math.min(micros, Integer.MAX_VALUE));
+    counts[indexOf(value)]++;
+    totalCount++;
+    totalMicros += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Removes all recorded values. */
+  public void reset() {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+    totalCount = 0;
+    totalMicros = 0;
+    min = Integer.MAX_VALUE;
+    max = 0;
+  }
+
+  /** Returns an independent copy of this histogram. */
+  public LatencyHistogram copy() {
+    return new LatencyHistogram(this);
+  }
+
+  /** Returns the number of recorded values. */
+  public long getCount() {
+    return totalCount;
+  }
+
+  /** Returns the smallest recorded value in microseconds, or 0 if empty. */
+  public int getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  /** Returns the largest recorded value in microseconds, or 0 if empty. */
+  public int getMax() {
+    return max;
+  }
+
+  /** Returns the mean of the recorded values in microseconds, or 0 if empty. */
+  public double getMean() {
+    return totalCount == 0 ? 0 : totalMicros / totalCount;
+  }
+
+  /** Returns the sum of the recorded values in microseconds. */
+  public double getTotal() {
+    return totalMicros;
+  }
+
+  /**
+   * Returns the value at the given percentile in microseconds: an upper bound of the bucket holding
+   * it, capped by the largest recorded value.
+   *
+   * @param percentile a percentile between 0 and 100
+   */
+  public int getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueAt(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns this histogram as a JSON object holding its count, min, max, mean and the 50th, 90th,
+   * 99th and 99.9th percentiles, all in microseconds.
+   */
+  public String toJson() {
+    return "{\"count\":"
+        + totalCount
+        + ",\"min\":"
+        + getMin()
+        + ",\"max\":"
+        + max
+        + ",\"mean\":"
+        + getMean()
+        + ",\"p50\":"
+        + getValueAtPercentile(50)
+        + ",\"p90\":"
+        + getValueAtPercentile(90)
+        + ",\"p99\":"
+        + getValueAtPercentile(99)
+        + ",\"p999\":"
+        + getValueAtPercentile(99.9)
+        + "}";
+  }
+}
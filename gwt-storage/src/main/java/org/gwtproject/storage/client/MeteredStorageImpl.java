@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Collection;
+import java.util.Map;
+import org.gwtproject.storage.client.StorageMetrics.Operation;
+
+/**
+ * A {@link StorageImpl} recording {@link StorageMetrics} around each operation requested through
+ * the {@link Storage} API, so that the reads made to fire the emulated events are not counted.
+ */
+class MeteredStorageImpl extends StorageImplNonNativeEvents {
+
+  @Override
+  public void clear(String storage) {
+    double start = StorageClock.now();
+    super.clear(storage);
+    StorageMetrics.record(Operation.CLEAR, start);
+  }
+
+  @Override
+  public String getItem(String storage, String key) {
+    double start = StorageClock.now();
+    String value = super.getItem(storage, key);
+    StorageMetrics.record(Operation.GET_ITEM, start);
+    StorageMetrics.recordRead(value);
+    return value;
+  }
+
+  @Override
+  public int getLength(String storage) {
+    double start = StorageClock.now();
+    int length = super.getLength(storage);
+    StorageMetrics.record(Operation.LENGTH, start);
+    return length;
+  }
+
+  @Override
+  public String key(String storage, int index) {
+    double start = StorageClock.now();
+    String key = super.key(storage, index);
+    StorageMetrics.record(Operation.KEY, start);
+    StorageMetrics.recordRead(key);
+    return key;
+  }
+
+  @Override
+  public void removeItem(String storage, String key) {
+    double start = StorageClock.now();
+    super.removeItem(storage, key);
+    StorageMetrics.record(Operation.REMOVE_ITEM, start);
+  }
+
+  @Override
+  public void setItem(String storage, String key, String data) {
+    double start = StorageClock.now();
+    super.setItem(storage, key, data);
+    StorageMetrics.record(Operation.SET_ITEM, start);
+    StorageMetrics.recordWritten(key, data);
+  }
+
+  @Override
+  public void setItems(String storage, Map<String, String> items) {
+    double start = StorageClock.now();
+    super.setItems(storage, items);
+    StorageMetrics.record(Operation.SET_ITEM, start, items.size());
+    for (Map.Entry<String, String> item : items.entrySet()) {
+      StorageMetrics.recordWritten(item.getKey(), item.getValue());
+    }
+  }
+
+  @Override
+  public void removeItems(String storage, Collection<String> keys) {
+    double start = StorageClock.now();
+    super.removeItems(storage, keys);
+    StorageMetrics.record(Operation.REMOVE_ITEM, start, keys.size());
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.core.client.Scheduler;
+
+/**
+ * Stores values tagged with a schema version in a {@link Storage}, and upgrades values written with
+ * an older schema lazily, when they are first read.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>Instead of rewriting all stored data at startup, each value carries the version it was written
+ * with, and {@link #getItem(String)} runs the registered {@link Migrator}s from that version up to
+ * the current one. Values stored without a version (e.g. by a release predating this class) are
+ * version <code>0</code>.
+ *
+ * <p>When write-back is enabled, migrated values are stored again so that they are migrated only
+ * once. The writes are batched and performed incrementally after the current event loop task, in
+ * slices that do not block the UI; a value changed in the meantime is not overwritten.
+ */
+public class MigratingStorage {
+
+  /** Upgrades a value from one schema version to the next. */
+  public interface Migrator {
+    /**
+     * Returns the value upgraded to the next version.
+     *
+     * @param key the key of the value
+     * @param value the value in the version the migrator was registered for
+     * @return the upgraded value, or <code>null</code> to discard the value
+     */
+    String migrate(String key, String value);
+  }
+
+  private static final String VERSION_PREFIX = "\u0000v";
+  // Time a write-back may spend per tick
+  private static final double SLICE_MILLIS = 4;
+
+  private final Storage storage;
+  private final int currentVersion;
+  private final Migrator[] migrators;
+  // key -> {stored item that was migrated, migrated item or null}, awaiting write-back
+  private final Map<String, String[]> pendingWrites = new LinkedHashMap<String, String[]>();
+  private boolean writeBack;
+  private boolean flushScheduled;
+
+  /**
+   * Creates a versioned view of the given storage.
+   *
+   * @param storage the storage holding the values
+   * @param currentVersion the schema version of the values written by this release
+   */
+  public MigratingStorage(Storage storage, int currentVersion) {
+    assert storage != null : "storage cannot be null";
+    assert currentVersion >= 0 : "currentVersion cannot be negative";
+    this.storage = storage;
+    this.currentVersion = currentVersion;
+    this.migrators = new Migrator[currentVersion];
+  }
+
+  /**
+   * Registers the migrator upgrading values from <code>fromVersion</code> to <code>
+   * fromVersion + 1</code>.
+   *
+   * @param fromVersion the version of the values the migrator accepts
+   * @param migrator the migrator
+   */
+  public void addMigrator(int fromVersion, Migrator migrator) {
+    assert fromVersion >= 0 && fromVersion < currentVersion : "fromVersion out of range";
+    assert migrator != null : "migrator cannot be null";
+    migrators[fromVersion] = migrator;
+  }
+
+  /** Returns the schema version of the values written by this release. */
+  public int getCurrentVersion() {
+    return currentVersion;
+  }
+
+  /**
+   * Sets whether migrated values are stored again, in idle time. Disabled by default, in which case
+   * values are migrated on every read until they are written.
+   */
+  public void setWriteBack(boolean writeBack) {
+    this.writeBack = writeBack;
+    if (!writeBack) {
+      pendingWrites.clear();
+    }
+  }
+
+  /**
+   * Returns the value associated with the specified key, migrated to the current version.
+   *
+   * @param key the key to a value in the Storage
+   * @return the migrated value, or <code>null</code> if there is none or a migrator discarded it
+   * @throws IllegalStateException if the value was written with a newer version or a migrator is
+   *     missing
+   */
+  public String getItem(String key) {
+    String item = storage.getItem(key);
+    if (item == null) {
+      return null;
+    }
+    int version = getVersion(item);
+    if (version == currentVersion) {
+      return getValue(item);
+    }
+    String[] pending = pendingWrites.get(key);
+    if (pending != null && pending[0].equals(item)) {
+      return pending[1] == null ? null : getValue(pending[1]);
+    }
+    String value = migrate(key, getValue(item), version);
+    if (writeBack) {
+      pendingWrites.put(key, new String[] {item, value == null ? null : encode(value)});
+      scheduleFlush();
+    }
+    return value;
+  }
+
+  /**
+   * Stores the value with the current version.
+   *
+   * @param key the key to a value in the Storage
+   * @param value the value associated with the key
+   */
+  public void setItem(String key, String value) {
+    pendingWrites.remove(key);
+    storage.setItem(key, encode(value));
+  }
+
+  /**
+   * Removes the value associated with the specified key.
+   *
+   * @param key the key to a value in the Storage
+   */
+  public void removeItem(String key) {
+    pendingWrites.remove(key);
+    storage.removeItem(key);
+  }
+
+  /**
+   * Returns the schema version of the value associated with the specified key, or <code>-1</code>
+   * if there is none.
+   *
+   * @param key the key to a value in the Storage
+   */
+  public int getStoredVersion(String key) {
+    String item = storage.getItem(key);
+    return item == null ? -1 : getVersion(item);
+  }
+
+  /** Returns the number of migrated values awaiting write-back. */
+  public int getPendingWriteBackCount() {
+    return pendingWrites.size();
+  }
+
+  /** Writes back all pending migrated values now. */
+  public void flush() {
+    writePending(Double.POSITIVE_INFINITY);
+  }
+
+  private String migrate(String key, String value, int version) {
+    if (version > currentVersion) {
+      throw new IllegalStateException(
+          "Value of " + key + " has version " + version + ", newer than " + currentVersion);
+    }
+    for (int v = version; v < currentVersion && value != null; v++) {
+      if (migrators[v] == null) {
+        throw new IllegalStateException("No migrator from version " + v);
+      }
+      value = migrators[v].migrate(key, value);
+    }
+    return value;
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.get()
+        .scheduleIncremental(
+            new Scheduler.RepeatingCommand() {
+              @Override
+              public boolean execute() {
+                writePending(StorageClock.now() + SLICE_MILLIS);
+                flushScheduled = !pendingWrites.isEmpty();
+                return flushScheduled;
+              }
+            });
+  }
+
+  /*
+   * Writes back pending values until the deadline, with a single bulk write.
+   */
+  private void writePending(double deadline) {
+    Map<String, String> writes = new LinkedHashMap<String, String>();
+    List<String> removals = new ArrayList<String>();
+    Iterator<Map.Entry<String, String[]>> it = pendingWrites.entrySet().iterator();
+    while (it.hasNext() && StorageClock.now() < deadline) {
+      Map.Entry<String, String[]> entry = it.next();
+      it.remove();
+      String[] pending = entry.getValue();
+      // do not overwrite a value changed since it was migrated
+      if (!pending[0].equals(storage.getItem(entry.getKey()))) {
+        continue;
+      }
+      if (pending[1] == null) {
+        removals.add(entry.getKey());
+      } else {
+        writes.put(entry.getKey(), pending[1]);
+      }
+    }
+    if (!writes.isEmpty()) {
+      storage.putAll(writes);
+    }
+    if (!removals.isEmpty()) {
+      storage.removeAll(removals);
+    }
+  }
+
+  private String encode(String value) {
+    return currentVersion == 0 ? value : VERSION_PREFIX + currentVersion + ":" + value;
+  }
+
+  private static int getVersion(String item) {
+    if (!item.startsWith(VERSION_PREFIX)) {
+      return 0;
+    }
+    return Integer.parseInt(item.substring(VERSION_PREFIX.length(), item.indexOf(':')));
+  }
+
+  private static String getValue(String item) {
+    return item.startsWith(VERSION_PREFIX) ? item.substring(item.indexOf(':') + 1) : item;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Reads values in the positional format of {@link StorageCodec}s from a string, without creating
+ * intermediate objects.
+ *
+ * <p>Separators between the values of an array are skipped automatically. Malformed input results
+ * in an {@link IllegalArgumentException}.
+ */
+public final class PositionalReader {
+  private final String in;
+  private int position;
+
+  /**
+   * Creates a reader.
+   *
+   * @param in the string to read
+   */
+  public PositionalReader(String in) {
+    this.in = in;
+  }
+
+  private IllegalArgumentException error(String expected) {
+    return new IllegalArgumentException(
+        "Expected " + expected + " at position " + position + " of " + in);
+  }
+
+  private void skipSeparator() {
+    if (position < in.length() && in.charAt(position) == ',') {
+      position++;
+    }
+  }
+
+  private char peek() {
+    skipSeparator();
+    if (position >= in.length()) {
+      throw error("a value");
+    }
+    return in.charAt(position);
+  }
+
+  private String readToken() {
+    peek();
+    int start = position;
+    while (position < in.length()) {
+      char c = in.charAt(position);
+      if (c == ',' || c == ']') {
+        break;
+      }
+      position++;
+    }
+    return in.substring(start, position);
+  }
+
+  /** Starts reading an array. */
+  public void beginArray() {
+    if (peek() != '[') {
+      throw error("'['");
+    }
+    position++;
+  }
+
+  /** Returns <code>true</code> if the current array has more values. */
+  public boolean hasNext() {
+    return peek() != ']';
+  }
+
+  /** Skips the remaining values of the current array, then ends it. */
+  public void endArray() {
+    while (hasNext()) {
+      skipValue();
+    }
+    position++;
+  }
+
+  /** Checks that the whole string was read. */
+  public void end() {
+    if (position != in.length()) {
+      throw error("the end");
+    }
+  }
+
+  /** Skips the next value. */
+  public void skipValue() {
+    char c = peek();
+    if (c == '[') {
+      beginArray();
+      endArray();
+    } else if (c == '"') {
+      readString();
+    } else {
+      readToken();
+    }
+  }
+
+  /** Consumes the next value and returns <code>true</code> if it is <code>null</code>. */
+  public boolean readNull() {
+    if (peek() == 'n' && in.startsWith("null", position)) {
+      position += 4;
+      return true;
+    }
+    return false;
+  }
+
+  public boolean readBoolean() {
+    String token = readToken();
+    if ("1".equals(token)) {
+      return true;
+    } else if ("0".equals(token)) {
+      return false;
+    }
+    throw error("a boolean");
+  }
+
+  public int readInt() {
+    try {
+      return Integer.parseInt(readToken());
+    } catch (NumberFormatException e) {
+      throw error("an int");
+    }
+  }
+
+  public long readLong() {
+    try {
+      return Long.parseLong(readToken());
+    } catch (NumberFormatException e) {
+      throw error("a long");
+    }
+  }
+
+  public double readDouble() {
+    try {
+      return Double.parseDouble(readToken());
+    } catch (NumberFormatException e) {
+      throw error("a double");
+    }
+  }
+
+  /** Reads a string, or <code>null</code>. */
+  public String readString() {
+    if (readNull()) {
+      return null;
+    }
+    if (peek() != '"') {
+      throw error("a string");
+    }
+    int start = ++position;
+    StringBuilder unescaped = null;
+    while (true) {
+      if (position >= in.length()) {
+        throw error("'\"'");
+      }
+      char c = in.charAt(position);
+      if (c == '"') {
+        break;
+      }
+      if (c != '\\') {
+        position++;
+        continue;
+      }
+      if (unescaped == null) {
+        unescaped = new StringBuilder();
+      }
+      unescaped.append(in, start, position);
+      char escaped = position + 1 < in.length() ? in.charAt(position + 1) : 0;
+      if (escaped == 'u' && position + 6 <= in.length()) {
+        unescaped.append((char) Integer.parseInt(in.substring(position + 2, position + 6), 16));
+        position += 6;
+      } else if (escaped == '"' || escaped == '\\') {
+        unescaped.append(escaped);
+        position += 2;
+      } else {
+        throw error("an escape sequence");
+      }
+      start = position;
+    }
+    String value =
+        unescaped == null
+            ? in.substring(start, position)
+            : unescaped.append(in, start, position).toString();
+    position++;
+    return value;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Appends values in the positional format of {@link StorageCodec}s to a string.
+ *
+ * <p>Values written between {@link #beginArray()} and {@link #endArray()} are separated
+ * automatically.
+ */
+public final class PositionalWriter {
+  private final StringBuilder out = new StringBuilder();
+  private boolean needsSeparator;
+
+  private PositionalWriter append(String value) {
+    if (needsSeparator) {
+      out.append(',');
+    }
+    out.append(value);
+    needsSeparator = true;
+    return this;
+  }
+
+  /** Starts an array. */
+  public PositionalWriter beginArray() {
+    if (needsSeparator) {
+      out.append(',');
+    }
+    out.append('[');
+    needsSeparator = false;
+    return this;
+  }
+
+  /** Ends the current array. */
+  public PositionalWriter endArray() {
+    out.append(']');
+    needsSeparator = true;
+    return this;
+  }
+
+  public PositionalWriter writeNull() {
+    return append("null");
+  }
+
+  public PositionalWriter writeBoolean(boolean value) {
+    return append(value ? "1" : "0");
+  }
+
+  public PositionalWriter writeInt(int value) {
+    return append(String.valueOf(value));
+  }
+
+  public PositionalWriter writeLong(long value) {
+    return append(String.valueOf(value));
+  }
+
+  public PositionalWriter writeDouble(double value) {
+    return append(String.valueOf(value));
+  }
+
+  /** Writes a string, or <code>null</code>, quoted and escaped as in JSON. */
+  public PositionalWriter writeString(String value) {
+    if (value == null) {
+      return writeNull();
+    }
+    if (needsSeparator) {
+      out.append(',');
+    }
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < 0x20) {
+        String hex = Integer.toHexString(c);
+        out.append("\\u00").append(hex.length() == 1 ? "0" : "").append(hex);
+      } else {
+        out.append(c);
+      }
+    }
+    out.append('"');
+    needsSeparator = true;
+    return this;
+  }
+
+  /** Returns everything written so far. */
+  @Override
+  public String toString() {
+    return out.toString();
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * A {@link Map Map&lt;String, String&gt;} replicated across the windows sharing a {@link Storage},
+ * whose concurrent updates converge to the same state in every window instead of overwriting each
+ * other.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>Each entry is a last-writer-wins register, stored under the map name, the <code>U+001F</code>
+ * separator and its key, with the stamp of its last write: a hybrid clock, the wall-clock time
+ * unless a later stamp was seen, and the id of the writing window to break ties. Removed entries
+ * are kept as tombstones with the stamp of their removal, so that a concurrent write with an older
+ * stamp cannot bring them back.
+ *
+ * <p>Every window holds the registers in memory. When a {@link StorageEvent} reports a change of an
+ * entry, only that entry is merged: the register with the greater stamp wins, and if the stored one
+ * lost, e.g. because two windows wrote the same item at the same time, the window holding the
+ * winner writes it again. All windows thus converge on the same value whatever the order of their
+ * writes, and merging costs a single read per changed key. Reads are served from memory.
+ *
+ * <p>Tombstones older than the tombstone lifetime are removed when the map is created and, at most
+ * once per lifetime, on writes; a window which missed the removal for longer than that may bring
+ * the entry back. Clearing the Storage resets the map in every window. {@link #detach()} stops
+ * merging once the map is no longer used. <code>null</code> keys and values are not supported.
+ */
+public class ReplicatedStorageMap extends AbstractMap<String, String> {
+
+  /** The default time tombstones are kept, in milliseconds. */
+  public static final long DEFAULT_TOMBSTONE_MILLIS = 60000;
+
+  private static final char SEPARATOR = '\u001F';
+
+  /*
+   * A register: a value, or null for a tombstone, and the stamp of its last write
+   */
+  private static final class Register {
+    final long stamp;
+    final String writer;
+    final String value;
+
+    Register(long stamp, String writer, String value) {
+      this.stamp = stamp;
+      this.writer = writer;
+      this.value = value;
+    }
+
+    static Register decode(String item) {
+      PositionalReader reader = new PositionalReader(item);
+      reader.beginArray();
+      long stamp = reader.readLong();
+      String writer = reader.readString();
+      String value = reader.readNull() ? null : reader.readString();
+      reader.endArray();
+      reader.end();
+      return new Register(stamp, writer, value);
+    }
+
+    String encode() {
+      PositionalWriter writer = new PositionalWriter().beginArray();
+      writer.writeLong(stamp).writeString(this.writer);
+      if (value == null) {
+        writer.writeNull();
+      } else {
+        writer.writeString(value);
+      }
+      return writer.endArray().toString();
+    }
+
+    /*
+     * Orders registers by stamp, then by writer; a missing register is older than all others
+     */
+    static int compare(Register a, Register b) {
+      if (a == null || b == null) {
+        return a == b ? 0 : (a == null ? -1 : 1);
+      }
+      if (a.stamp != b.stamp) {
+        return a.stamp < b.stamp ? -1 : 1;
+      }
+      return a.writer.compareTo(b.writer);
+    }
+  }
+
+  /*
+   * Represents a Set over the live entries of the map
+   */
+  private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+      // removing entries may compact tombstones, so iterate over a snapshot of the keys
+      final Iterator<String> it = new ArrayList<String>(registers.keySet()).iterator();
+      return new Iterator<Map.Entry<String, String>>() {
+        private Map.Entry<String, String> next = advance();
+        private String last;
+
+        @Override
+        public boolean hasNext() {
+          return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+          if (next == null) {
+            throw new NoSuchElementException();
+          }
+          Map.Entry<String, String> entry = next;
+          last = entry.getKey();
+          next = advance();
+          return entry;
+        }
+
+        @Override
+        public void remove() {
+          if (last == null) {
+            throw new IllegalStateException();
+          }
+          ReplicatedStorageMap.this.remove(last);
+          last = null;
+        }
+
+        private Map.Entry<String, String> advance() {
+          while (it.hasNext()) {
+            final String key = it.next();
+            String value = get(key);
+            if (value != null) {
+              return new SimpleEntry<String, String>(key, value) {
+                @Override
+                public String setValue(String value) {
+                  put(key, value);
+                  return super.setValue(value);
+                }
+              };
+            }
+          }
+          return null;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      ReplicatedStorageMap.this.clear();
+    }
+  }
+
+  private final Storage storage;
+  private final String prefix;
+  private final String id;
+  private final long tombstoneMillis;
+  private final Map<String, Register> registers = new HashMap<String, Register>();
+  private final Set<String> tombstones = new LinkedHashSet<String>();
+  private final HandlerRegistration registration;
+  private final HandlerRegistration crossWindowRegistration;
+  private int size;
+  // the greatest stamp written or seen
+  private long clock;
+  private long nextCompaction;
+
+  /**
+   * Creates the replica of the map of the specified name in this window, keeping tombstones for
+   * {@link #DEFAULT_TOMBSTONE_MILLIS}.
+   *
+   * @param storage the local storage shared by the windows
+   * @param name the name of the map, prefixing the keys of its items
+   */
+  public ReplicatedStorageMap(Storage storage, String name) {
+    this(storage, name, DEFAULT_TOMBSTONE_MILLIS);
+  }
+
+  /**
+   * Creates the replica of the map of the specified name in this window, reading its entries.
+   *
+   * @param storage the local storage shared by the windows
+   * @param name the name of the map, prefixing the keys of its items
+   * @param tombstoneMillis the time removed entries are kept as tombstones; it must exceed the time
+   *     it takes other windows to receive a change
+   */
+  public ReplicatedStorageMap(Storage storage, String name, long tombstoneMillis) {
+    assert storage != null : "storage cannot be null";
+    assert tombstoneMillis > 0 : "tombstoneMillis must be positive";
+    this.storage = storage;
+    this.prefix = name + SEPARATOR;
+    this.tombstoneMillis = tombstoneMillis;
+    this.id =
+        Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+    StorageEvent.Handler handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            if (event.getStorageArea() != ReplicatedStorageMap.this.storage) {
+              return;
+            }
+            String key = event.getKey();
+            if (key == null) {
+              reset();
+            } else if (key.startsWith(prefix)) {
+              merge(key.substring(prefix.length()));
+            }
+          }
+        };
+    registration = Storage.addStorageEventHandler(handler);
+    crossWindowRegistration = storage.addCrossWindowEventHandler(handler);
+    for (StoragePage page = storage.scan(null, 100, prefix);
+        ;
+        page = storage.scan(page.getCursor(), 100, prefix)) {
+      for (Map.Entry<String, String> item : page.getItems().entrySet()) {
+        Register register = Register.decode(item.getValue());
+        clock = Math.max(clock, register.stamp);
+        setRegister(item.getKey().substring(prefix.length()), register);
+      }
+      if (!page.hasMore()) {
+        break;
+      }
+    }
+    compact();
+  }
+
+  /** Returns the id of this window, which breaks the ties between writes of the same stamp. */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Removes the tombstones older than the tombstone lifetime from the Storage, unless they were
+   * overwritten in the meantime.
+   */
+  public void compact() {
+    long now = now();
+    nextCompaction = now + tombstoneMillis;
+    for (String key : new ArrayList<String>(tombstones)) {
+      Register register = registers.get(key);
+      if (register.stamp > now - tombstoneMillis) {
+        continue;
+      }
+      String item = storage.getItem(prefix + key);
+      if (item == null || item.equals(register.encode())) {
+        setRegister(key, null);
+        storage.removeItem(prefix + key);
+      }
+    }
+  }
+
+  /** Stops merging the changes of other windows. The map must not be used afterwards. */
+  public void detach() {
+    registration.removeHandler();
+    crossWindowRegistration.removeHandler();
+  }
+
+  /** Removes all entries, leaving a tombstone for each. */
+  @Override
+  public void clear() {
+    for (String key : new ArrayList<String>(registers.keySet())) {
+      remove(key);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new EntrySet();
+  }
+
+  @Override
+  public String get(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    Register register = registers.get(key);
+    return register == null ? null : register.value;
+  }
+
+  @Override
+  public String put(String key, String value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    return write(key, value);
+  }
+
+  @Override
+  public String remove(Object key) {
+    return get(key) == null ? null : write((String) key, null);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /*
+   * Returns the current time, shared by the windows
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /*
+   * Writes a register stamped after every register seen so far, and returns the previous value
+   */
+  private String write(String key, String value) {
+    // writes of other windows whose event was not delivered yet must be seen to be outdated
+    merge(key);
+    String old = get(key);
+    clock = Math.max(now(), clock + 1);
+    Register register = new Register(clock, id, value);
+    setRegister(key, register);
+    storage.setItem(prefix + key, register.encode());
+    if (now() >= nextCompaction) {
+      compact();
+    }
+    return old;
+  }
+
+  /*
+   * Merges the stored register of the specified key with the one in memory
+   */
+  private void merge(String key) {
+    String item = storage.getItem(prefix + key);
+    Register stored = item == null ? null : Register.decode(item);
+    Register local = registers.get(key);
+    int order = Register.compare(local, stored);
+    if (order < 0) {
+      clock = Math.max(clock, stored.stamp);
+      setRegister(key, stored);
+    } else if (order > 0) {
+      if (stored == null && local.value == null) {
+        // the tombstone was compacted
+        setRegister(key, null);
+      } else {
+        // an outdated register overwrote ours: write it again
+        storage.setItem(prefix + key, local.encode());
+      }
+    }
+  }
+
+  /*
+   * Forgets all registers, after the Storage was cleared
+   */
+  private void reset() {
+    registers.clear();
+    tombstones.clear();
+    size = 0;
+  }
+
+  private void setRegister(String key, Register register) {
+    Register old = register == null ? registers.remove(key) : registers.put(key, register);
+    if (old != null && old.value != null) {
+      size--;
+    }
+    if (register != null && register.value != null) {
+      size++;
+      tombstones.remove(key);
+    } else if (register != null) {
+      tombstones.add(key);
+    } else {
+      tombstones.remove(key);
+    }
+  }
+}
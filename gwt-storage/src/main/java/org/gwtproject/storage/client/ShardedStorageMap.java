@@ -0,0 +1,428 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.gwtproject.core.client.Scheduler;
+
+/**
+ * Exposes a {@link Map Map&lt;String, String&gt;} stored in a fixed number of {@link Storage} items
+ * ("buckets"), the entries being distributed over the buckets by the hash of their key.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>Unlike {@link StorageMap}, which stores each entry under its own key, the number of Storage
+ * items stays bounded however large the map grows. Buckets are stored under the map name, the
+ * <code>U+001F</code> separator and the bucket index, next to a header item (the name, the
+ * separator and <code>h</code>) holding the bucket count and the number of entries of each bucket,
+ * so {@link #size()} does not read any bucket.
+ *
+ * <p>A bucket is read on first access and then kept in memory. Changes are applied to the cached
+ * buckets and written after the current event loop task (or on {@link #flush()}), rewriting only
+ * the buckets that changed. Changes made by another window are only seen after {@link #reload()}.
+ *
+ * <p>When it writes the header, a window only updates the counts of the buckets it wrote, keeping
+ * those written by other windows, so windows changing different buckets keep a correct size. Like
+ * the buckets themselves, the last window to write a bucket wins; a count may only be lost if two
+ * windows write the header at the same moment, and it is then corrected by the next write of its
+ * bucket, or in this window as soon as the bucket is read.
+ *
+ * <p>As with {@link StorageMap}, <code>null</code> keys and values are not supported.
+ */
+public class ShardedStorageMap extends AbstractMap<String, String> {
+
+  /** The default number of buckets. */
+  public static final int DEFAULT_BUCKET_COUNT = 64;
+
+  private static final char SEPARATOR = '\u001F';
+
+  /*
+   * Iterates over the entries of all buckets, loading them in turn
+   */
+  private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+    private int bucket = -1;
+    private Iterator<Map.Entry<String, String>> current;
+    private Iterator<Map.Entry<String, String>> last;
+    private int lastBucket;
+
+    @Override
+    public boolean hasNext() {
+      while (current == null || !current.hasNext()) {
+        if (bucket + 1 >= bucketCount) {
+          return false;
+        }
+        bucket++;
+        current = getBucket(bucket).entrySet().iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public Map.Entry<String, String> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = current;
+      lastBucket = bucket;
+      final Map.Entry<String, String> entry = current.next();
+      return new SimpleEntry<String, String>(entry) {
+        @Override
+        public String setValue(String value) {
+          put(entry.getKey(), value);
+          return super.setValue(value);
+        }
+      };
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      last.remove();
+      last = null;
+      countChanged(lastBucket, -1);
+      markDirty(lastBucket);
+    }
+  }
+
+  private final Storage storage;
+  private final String name;
+  private int bucketCount;
+  private int size;
+  private Map<String, String>[] buckets;
+  // the number of entries of each bucket, known before the bucket is read
+  private int[] counts;
+  private boolean[] dirty;
+  // the buckets whose count in the header must be updated
+  private boolean[] countDirty;
+  private boolean flushScheduled;
+
+  /**
+   * Creates a map with {@link #DEFAULT_BUCKET_COUNT} buckets.
+   *
+   * @param storage the storage holding the buckets
+   * @param name the name of the map, prefixing its keys
+   */
+  public ShardedStorageMap(Storage storage, String name) {
+    this(storage, name, DEFAULT_BUCKET_COUNT);
+  }
+
+  /**
+   * Creates a map. If the map is already stored, its bucket count is used instead.
+   *
+   * @param storage the storage holding the buckets
+   * @param name the name of the map, prefixing its keys
+   * @param bucketCount the number of buckets of a new map
+   */
+  public ShardedStorageMap(Storage storage, String name, int bucketCount) {
+    assert storage != null : "storage cannot be null";
+    assert name != null && !name.isEmpty() : "name cannot be empty";
+    assert bucketCount > 0 : "bucketCount must be positive";
+    this.storage = storage;
+    this.name = name;
+    this.bucketCount = bucketCount;
+    readHeader();
+  }
+
+  /** Returns the number of buckets. */
+  public int getBucketCount() {
+    return bucketCount;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < bucketCount; i++) {
+      if (buckets[i] == null) {
+        buckets[i] = new LinkedHashMap<String, String>();
+      } else {
+        buckets[i].clear();
+      }
+      dirty[i] = true;
+      countDirty[i] = true;
+      counts[i] = 0;
+    }
+    size = 0;
+    scheduleFlush();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new AbstractSet<Map.Entry<String, String>>() {
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void clear() {
+        ShardedStorageMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Returns the value associated with the specified key, reading only the bucket of the key.
+   *
+   * @param key the key identifying the value
+   */
+  @Override
+  public String get(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    return getBucket(bucketOf(key.toString())).get(key.toString());
+  }
+
+  /**
+   * Adds (or overwrites) a key/value pair, changing only the bucket of the key.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param value the value associated with the key (not <code>null</code>)
+   */
+  @Override
+  public String put(String key, String value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int index = bucketOf(key);
+    String old = getBucket(index).put(key, value);
+    if (!value.equals(old)) {
+      markDirty(index);
+    }
+    if (old == null) {
+      countChanged(index, 1);
+    }
+    return old;
+  }
+
+  @Override
+  public String remove(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    int index = bucketOf(key.toString());
+    String old = getBucket(index).remove(key.toString());
+    if (old != null) {
+      countChanged(index, -1);
+      markDirty(index);
+    }
+    return old;
+  }
+
+  /** Returns the number of entries, without reading any bucket. */
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** Writes the changed buckets and the header now. */
+  public void flush() {
+    Map<String, String> writes = new LinkedHashMap<String, String>();
+    List<String> removals = new ArrayList<String>();
+    for (int i = 0; i < bucketCount; i++) {
+      if (!dirty[i]) {
+        continue;
+      }
+      dirty[i] = false;
+      if (buckets[i].isEmpty()) {
+        removals.add(bucketKey(i));
+      } else {
+        PositionalWriter writer = new PositionalWriter().beginArray();
+        for (Map.Entry<String, String> entry : buckets[i].entrySet()) {
+          writer.writeString(entry.getKey()).writeString(entry.getValue());
+        }
+        writes.put(bucketKey(i), writer.endArray().toString());
+      }
+    }
+    if (isCountDirty()) {
+      String header = writeHeader();
+      if (header == null) {
+        removals.add(headerKey());
+      } else {
+        writes.put(headerKey(), header);
+      }
+    }
+    if (!writes.isEmpty()) {
+      storage.putAll(writes);
+    }
+    if (!removals.isEmpty()) {
+      storage.removeAll(removals);
+    }
+  }
+
+  /** Discards all cached buckets, after writing pending changes, so that they are read again. */
+  public void reload() {
+    flush();
+    readHeader();
+  }
+
+  private String headerKey() {
+    return name + SEPARATOR + "h";
+  }
+
+  private String bucketKey(int index) {
+    return name + SEPARATOR + index;
+  }
+
+  private int bucketOf(String key) {
+    // String.hashCode() is the same on the JVM and in the browser
+    return (key.hashCode() & 0x7fffffff) % bucketCount;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readHeader() {
+    int[] stored = readCounts();
+    if (stored != null) {
+      bucketCount = stored.length;
+    }
+    buckets = new Map[bucketCount];
+    counts = stored != null ? stored : new int[bucketCount];
+    dirty = new boolean[bucketCount];
+    countDirty = new boolean[bucketCount];
+    size = 0;
+    for (int count : counts) {
+      size += count;
+    }
+  }
+
+  /*
+   * Returns the counts of the stored header, or null if there is none
+   */
+  private int[] readCounts() {
+    String header = storage.getItem(headerKey());
+    if (header == null) {
+      return null;
+    }
+    // [bucketCount,count0,count1...]
+    PositionalReader reader = new PositionalReader(header);
+    reader.beginArray();
+    int[] stored = new int[reader.readInt()];
+    for (int i = 0; i < stored.length; i++) {
+      stored[i] = reader.readInt();
+    }
+    reader.endArray();
+    return stored;
+  }
+
+  private boolean isCountDirty() {
+    for (boolean changed : countDirty) {
+      if (changed) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Returns the header updated with the counts of the buckets this window changed or read, keeping
+   * the counts of the other buckets as stored, or null if the map is empty
+   */
+  private String writeHeader() {
+    int[] stored = readCounts();
+    if (stored == null || stored.length != bucketCount) {
+      stored = new int[bucketCount];
+    }
+    PositionalWriter writer = new PositionalWriter().beginArray().writeInt(bucketCount);
+    int total = 0;
+    for (int i = 0; i < bucketCount; i++) {
+      if (countDirty[i]) {
+        countDirty[i] = false;
+        stored[i] = counts[i];
+      } else if (buckets[i] == null && counts[i] != stored[i]) {
+        // the bucket was changed by another window
+        size += stored[i] - counts[i];
+        counts[i] = stored[i];
+      }
+      total += stored[i];
+      writer.writeInt(stored[i]);
+    }
+    return total == 0 ? null : writer.endArray().toString();
+  }
+
+  /*
+   * Returns the entries of a bucket, reading it if it is not cached
+   */
+  private Map<String, String> getBucket(int index) {
+    if (buckets[index] == null) {
+      Map<String, String> bucket = new LinkedHashMap<String, String>();
+      String item = storage.getItem(bucketKey(index));
+      if (item != null) {
+        // [key,value,key,value...]
+        PositionalReader reader = new PositionalReader(item);
+        reader.beginArray();
+        while (reader.hasNext()) {
+          bucket.put(reader.readString(), reader.readString());
+        }
+        reader.endArray();
+      }
+      buckets[index] = bucket;
+      if (bucket.size() != counts[index]) {
+        // the count was lost, or the bucket was changed by another window
+        size += bucket.size() - counts[index];
+        counts[index] = bucket.size();
+        countDirty[index] = true;
+      }
+    }
+    return buckets[index];
+  }
+
+  private void countChanged(int index, int delta) {
+    counts[index] += delta;
+    size += delta;
+    countDirty[index] = true;
+  }
+
+  private void markDirty(int index) {
+    dirty[index] = true;
+    scheduleFlush();
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                flushScheduled = false;
+                flush();
+              }
+            });
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Reported through {@link org.gwtproject.core.client.GWT#reportUncaughtException(Throwable)} when a
+ * {@link StorageEvent.Handler} runs longer than the budget set with {@link
+ * Storage#setEventHandlerBudget(double)}.
+ *
+ * <p>The handler itself completed normally; this exception only carries the diagnostic.
+ */
+public class SlowStorageEventHandlerException extends RuntimeException {
+  private final transient StorageEvent.Handler handler;
+  private final String key;
+  private final double elapsedMillis;
+  private final double budgetMillis;
+  private final boolean demoted;
+
+  SlowStorageEventHandlerException(
+      StorageEvent.Handler handler,
+      String key,
+      double elapsedMillis,
+      double budgetMillis,
+      boolean demoted) {
+    super(
+        "StorageEvent handler "
+            + handler.getClass().getName()
+            + " took "
+            + elapsedMillis
+            + "ms (budget: "
+            + budgetMillis
+            + "ms) for key "
+            + key
+            + (demoted ? "; its events are now delivered deferred" : ""));
+    this.handler = handler;
+    this.key = key;
+    this.elapsedMillis = elapsedMillis;
+    this.budgetMillis = budgetMillis;
+    this.demoted = demoted;
+  }
+
+  /** Returns the slow handler. */
+  public StorageEvent.Handler getHandler() {
+    return handler;
+  }
+
+  /** Returns the key of the event the handler was slow on, <code>null</code> for a clear. */
+  public String getKey() {
+    return key;
+  }
+
+  /** Returns the time spent in the handler, in milliseconds. */
+  public double getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /** Returns the budget which was exceeded, in milliseconds. */
+  public double getBudgetMillis() {
+    return budgetMillis;
+  }
+
+  /**
+   * Returns <code>true</code> if this overrun demoted the handler to deferred delivery (see {@link
+   * Storage#setSlowEventHandlerDemotion(int)}).
+   */
+  public boolean isDemoted() {
+    return demoted;
+  }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * Exposes a {@link Storage} as a {@link NavigableMap NavigableMap&lt;String, String&gt;} sorted by
+ * key, for range queries over keys such as <code>log:2026-10-17T12:00</code>.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The keys are enumerated once, when the map is created, into an in-memory sorted index (a
+ * red-black tree) which is then maintained incrementally from the {@link StorageEvent}s of the
+ * Storage. Navigation methods ({@link #ceilingKey(String)}, {@link #firstKey()}...) and the
+ * creation of {@link #subMap(String, boolean, String, boolean) range views} take logarithmic time
+ * and do not read the Storage; values are read when they are accessed.
+ *
+ * <p>Views share the index of the map they were created from; their keys must be within their
+ * range. Changes made by other windows are applied from the storage events the browser fires for
+ * them; {@link #reload()} enumerates the keys again. {@link #detach()} stops maintaining the index
+ * once the map is no longer used.
+ *
+ * <p>Entries returned by the navigation methods are snapshots and do not support <code>setValue
+ * </code>. As with {@link StorageMap}, <code>null</code> keys and values are not supported.
+ */
+public class SortedStorageMap extends AbstractMap<String, String>
+    implements NavigableMap<String, String> {
+
+  /*
+   * The sorted keys of a Storage, shared by a map and its views
+   */
+  private static final class Index implements StorageEvent.Handler {
+    final Storage storage;
+    final TreeSet<String> keys = new TreeSet<String>();
+    HandlerRegistration registration;
+    HandlerRegistration crossWindowRegistration;
+
+    Index(Storage storage) {
+      this.storage = storage;
+      rebuild();
+      registration = Storage.addStorageEventHandler(this);
+      crossWindowRegistration = storage.addCrossWindowEventHandler(this);
+    }
+
+    void rebuild() {
+      keys.clear();
+      int length = storage.getLength();
+      for (int i = 0; i < length; i++) {
+        String key = storage.key(i);
+        if (key != null) {
+          keys.add(key);
+        }
+      }
+    }
+
+    @Override
+    public void onStorageChange(StorageEvent event) {
+      if (event.getStorageArea() != storage) {
+        return;
+      }
+      if (event.getKey() == null) {
+        // the Storage was cleared
+        keys.clear();
+      } else if (event.getNewValue() == null) {
+        keys.remove(event.getKey());
+      } else {
+        keys.add(event.getKey());
+      }
+    }
+  }
+
+  /*
+   * Represents an Iterator over keys which removes the items from the Storage
+   */
+  private class KeyIterator implements Iterator<String> {
+    private final Iterator<String> it;
+    private String last;
+
+    KeyIterator(Iterator<String> it) {
+      this.it = it;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return it.hasNext();
+    }
+
+    @Override
+    public String next() {
+      last = it.next();
+      return last;
+    }
+
+    @Override
+    public void remove() {
+      // update the index first, so that the storage event does not change it during iteration
+      it.remove();
+      index.storage.removeItem(last);
+    }
+  }
+
+  /*
+   * Represents a NavigableSet over the keys of the map
+   */
+  private class KeySet extends AbstractSet<String> implements NavigableSet<String> {
+    @Override
+    public Iterator<String> iterator() {
+      return new KeyIterator(keys.iterator());
+    }
+
+    @Override
+    public Iterator<String> descendingIterator() {
+      return new KeyIterator(keys.descendingIterator());
+    }
+
+    @Override
+    public int size() {
+      return SortedStorageMap.this.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return SortedStorageMap.this.remove(o) != null;
+    }
+
+    @Override
+    public void clear() {
+      SortedStorageMap.this.clear();
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+      return SortedStorageMap.this.comparator();
+    }
+
+    @Override
+    public String first() {
+      return firstKey();
+    }
+
+    @Override
+    public String last() {
+      return lastKey();
+    }
+
+    @Override
+    public String lower(String e) {
+      return lowerKey(e);
+    }
+
+    @Override
+    public String floor(String e) {
+      return floorKey(e);
+    }
+
+    @Override
+    public String ceiling(String e) {
+      return ceilingKey(e);
+    }
+
+    @Override
+    public String higher(String e) {
+      return higherKey(e);
+    }
+
+    @Override
+    public String pollFirst() {
+      Map.Entry<String, String> entry = pollFirstEntry();
+      return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public String pollLast() {
+      Map.Entry<String, String> entry = pollLastEntry();
+      return entry == null ? null : entry.getKey();
+    }
+
+    @Override
+    public NavigableSet<String> descendingSet() {
+      return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<String> subSet(
+        String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+      return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+      return headMap(toElement, inclusive).navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+      return tailMap(fromElement, inclusive).navigableKeySet();
+    }
+
+    @Override
+    public SortedSet<String> subSet(String fromElement, String toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> headSet(String toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<String> tailSet(String fromElement) {
+      return tailSet(fromElement, true);
+    }
+  }
+
+  /*
+   * Represents a Set over the entries of the map
+   */
+  private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+      final KeyIterator it = new KeyIterator(keys.iterator());
+      return new Iterator<Map.Entry<String, String>>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+          final String key = it.next();
+          return new SimpleEntry<String, String>(key, index.storage.getItem(key)) {
+            @Override
+            public String setValue(String value) {
+              put(key, value);
+              return super.setValue(value);
+            }
+          };
+        }
+
+        @Override
+        public void remove() {
+          it.remove();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return SortedStorageMap.this.size();
+    }
+
+    @Override
+    public void clear() {
+      SortedStorageMap.this.clear();
+    }
+  }
+
+  private final Index index;
+  // the keys of this map: the whole index, or a view of it
+  private final NavigableSet<String> keys;
+
+  /**
+   * Creates the Map with the specified Storage as data provider, enumerating its keys once.
+   *
+   * @param storage a local/session Storage instance obtained by either {@link
+   *     Storage#getLocalStorageIfSupported()} or {@link Storage#getSessionStorageIfSupported()}.
+   */
+  public SortedStorageMap(Storage storage) {
+    assert storage != null : "storage cannot be null";
+    this.index = new Index(storage);
+    this.keys = index.keys;
+  }
+
+  private SortedStorageMap(Index index, NavigableSet<String> keys) {
+    this.index = index;
+    this.keys = keys;
+  }
+
+  /**
+   * Stops maintaining the index of this map and its views from storage events. The map must not be
+   * used afterwards.
+   */
+  public void detach() {
+    if (index.registration != null) {
+      index.registration.removeHandler();
+      index.crossWindowRegistration.removeHandler();
+      index.registration = null;
+      index.crossWindowRegistration = null;
+    }
+  }
+
+  /** Enumerates the keys of the Storage again, e.g. after other windows changed it. */
+  public void reload() {
+    index.rebuild();
+  }
+
+  @Override
+  public void clear() {
+    index.storage.removeAll(new ArrayList<String>(keys));
+    keys.clear();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    return keys.contains(key);
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new EntrySet();
+  }
+
+  /**
+   * Returns the value associated with the specified key, without reading the Storage if the key is
+   * not in the index.
+   *
+   * @param key the key identifying the value
+   */
+  @Override
+  public String get(Object key) {
+    return containsKey(key) ? index.storage.getItem(key.toString()) : null;
+  }
+
+  /**
+   * Adds (or overwrites) a new key/value pair in the Storage.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param value the value associated with the key (not <code>null</code>)
+   * @throws IllegalArgumentException if the key is outside the range of this view
+   */
+  @Override
+  public String put(String key, String value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    boolean added = !keys.contains(key);
+    if (added) {
+      // throws if the key is out of range, before anything is written
+      keys.subSet(key, true, key, true);
+    }
+    String old = added ? null : index.storage.getItem(key);
+    // the index is only updated once the write succeeded, e.g. within the quota
+    index.storage.setItem(key, value);
+    keys.add(key);
+    return old;
+  }
+
+  @Override
+  public String remove(Object key) {
+    if (!containsKey(key)) {
+      return null;
+    }
+    String k = key.toString();
+    String old = index.storage.getItem(k);
+    index.storage.removeItem(k);
+    keys.remove(k);
+    return old;
+  }
+
+  @Override
+  public int size() {
+    return keys.size();
+  }
+
+  @Override
+  public Comparator<? super String> comparator() {
+    return keys.comparator();
+  }
+
+  @Override
+  public String firstKey() {
+    return keys.first();
+  }
+
+  @Override
+  public String lastKey() {
+    return keys.last();
+  }
+
+  @Override
+  public Map.Entry<String, String> lowerEntry(String key) {
+    return entry(keys.lower(key));
+  }
+
+  @Override
+  public String lowerKey(String key) {
+    return keys.lower(key);
+  }
+
+  @Override
+  public Map.Entry<String, String> floorEntry(String key) {
+    return entry(keys.floor(key));
+  }
+
+  @Override
+  public String floorKey(String key) {
+    return keys.floor(key);
+  }
+
+  @Override
+  public Map.Entry<String, String> ceilingEntry(String key) {
+    return entry(keys.ceiling(key));
+  }
+
+  @Override
+  public String ceilingKey(String key) {
+    return keys.ceiling(key);
+  }
+
+  @Override
+  public Map.Entry<String, String> higherEntry(String key) {
+    return entry(keys.higher(key));
+  }
+
+  @Override
+  public String higherKey(String key) {
+    return keys.higher(key);
+  }
+
+  @Override
+  public Map.Entry<String, String> firstEntry() {
+    return keys.isEmpty() ? null : entry(keys.first());
+  }
+
+  @Override
+  public Map.Entry<String, String> lastEntry() {
+    return keys.isEmpty() ? null : entry(keys.last());
+  }
+
+  @Override
+  public Map.Entry<String, String> pollFirstEntry() {
+    return poll(keys.pollFirst());
+  }
+
+  @Override
+  public Map.Entry<String, String> pollLastEntry() {
+    return poll(keys.pollLast());
+  }
+
+  @Override
+  public NavigableMap<String, String> descendingMap() {
+    return new SortedStorageMap(index, keys.descendingSet());
+  }
+
+  @Override
+  public NavigableSet<String> navigableKeySet() {
+    return new KeySet();
+  }
+
+  @Override
+  public Set<String> keySet() {
+    return navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<String> descendingKeySet() {
+    return descendingMap().navigableKeySet();
+  }
+
+  @Override
+  public NavigableMap<String, String> subMap(
+      String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+    return new SortedStorageMap(index, keys.subSet(fromKey, fromInclusive, toKey, toInclusive));
+  }
+
+  @Override
+  public NavigableMap<String, String> headMap(String toKey, boolean inclusive) {
+    return new SortedStorageMap(index, keys.headSet(toKey, inclusive));
+  }
+
+  @Override
+  public NavigableMap<String, String> tailMap(String fromKey, boolean inclusive) {
+    return new SortedStorageMap(index, keys.tailSet(fromKey, inclusive));
+  }
+
+  @Override
+  public SortedMap<String, String> subMap(String fromKey, String toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public SortedMap<String, String> headMap(String toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public SortedMap<String, String> tailMap(String fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  private Map.Entry<String, String> entry(String key) {
+    return key == null ? null : new SimpleImmutableEntry<String, String>(key, get(key));
+  }
+
+  private Map.Entry<String, String> poll(String key) {
+    if (key == null) {
+      return null;
+    }
+    String value = index.storage.getItem(key);
+    index.storage.removeItem(key);
+    return new SimpleImmutableEntry<String, String>(key, value);
+  }
+}
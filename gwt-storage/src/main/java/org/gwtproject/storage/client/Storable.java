@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose instances can be stored in a {@link Storage}.
+ *
+ * <p>The <code>gwt-storage-processor</code> annotation processor generates, for each annotated
+ * class <code>Foo</code>, a <code>Foo_StorageCodec</code> {@link StorageCodec} in the same package,
+ * exposed as <code>Foo_StorageCodec.INSTANCE</code>.
+ *
+ * <p>The class must have an accessible no-argument constructor. All its non-static, non-transient
+ * fields are stored, including those inherited, which come first, in declaration order; they must
+ * be neither private nor final, since they are assigned when a value is read, inherited fields must
+ * be public or declared in the same package, and a field must not hide an inherited one. They may
+ * be of a primitive type, a boxed primitive, {@link String}, an enum, another <code>@Storable
+ * </code> class or a {@link java.util.List} of those.
+ *
+ * <p>Fields are stored by position, so new fields must only be added after the existing ones:
+ * values stored before the addition are then read with the new fields left at their initial value,
+ * and older code reading newer values ignores the additional fields.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Storable {}
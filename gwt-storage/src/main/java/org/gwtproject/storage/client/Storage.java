@@ -16,8 +16,11 @@
 
 package org.gwtproject.storage.client;
 
-import elemental2.dom.DomGlobal;
-import elemental2.webstorage.WebStorageWindow;
+import elemental2.dom.EventListener;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
 import org.gwtproject.event.shared.HandlerRegistration;
 
 /**
@@ -63,7 +66,8 @@ import org.gwtproject.event.shared.HandlerRegistration;
 // storage events.
 public final class Storage {
 
-  static final StorageImpl impl = new StorageImplNonNativeEvents();
+  static final StorageImpl impl =
+      StorageMetrics.ENABLED ? new MeteredStorageImpl() : new StorageImplNonNativeEvents();
   private static Storage localStorage;
   private static Storage sessionStorage;
   // Contains either "localStorage" or "sessionStorage":
@@ -89,6 +93,21 @@ public final class Storage {
     return impl.addStorageEventHandler(handler);
   }
 
+  /**
+   * Registers a handler receiving StorageEvents in batches.
+   *
+   * <p>Unlike {@link StorageEvent.Handler}s, which run synchronously within each write, batch
+   * handlers are invoked once per microtask with all the changes made since, coalesced per key: a
+   * burst of writes results in a single invocation.
+   *
+   * @param handler
+   * @return {@link HandlerRegistration} used to remove this handler
+   * @see StorageEvent.BatchHandler
+   */
+  public static HandlerRegistration addStorageEventBatchHandler(StorageEvent.BatchHandler handler) {
+    return impl.addStorageEventBatchHandler(handler);
+  }
+
   /**
    * Returns a Local Storage.
    *
@@ -163,6 +182,62 @@ public final class Storage {
     impl.removeStorageEventHandler(handler);
   }
 
+  /**
+   * De-registers a batch handler for StorageEvents.
+   *
+   * @param handler
+   */
+  public static void removeStorageEventBatchHandler(StorageEvent.BatchHandler handler) {
+    impl.removeStorageEventBatchHandler(handler);
+  }
+
+  /**
+   * Sets the time a {@link StorageEvent.Handler} may spend on a single event.
+   *
+   * <p>Handlers run synchronously within the write which fired the event, so a slow handler slows
+   * down every write. Handlers exceeding the budget are reported, with the key of the event, as a
+   * {@link SlowStorageEventHandlerException} through {@link
+   * org.gwtproject.core.client.GWT#reportUncaughtException(Throwable)}.
+   *
+   * <p>Setting the budget resets the overrun counts of all handlers.
+   *
+   * @param budgetMillis the budget in milliseconds, <code>0</code> (the default) to disable it
+   */
+  public static void setEventHandlerBudget(double budgetMillis) {
+    StorageImpl.setHandlerBudget(budgetMillis);
+  }
+
+  /**
+   * Sets the number of times a {@link StorageEvent.Handler} may exceed the budget set with {@link
+   * #setEventHandlerBudget(double)} before being demoted: a demoted handler receives its events in
+   * a deferred command instead of within the write which fired them.
+   *
+   * <p>Setting the threshold resets the overrun counts of all handlers, promoting any demoted
+   * handler back to synchronous delivery.
+   *
+   * @param overruns the number of overruns, <code>0</code> (the default) to never demote handlers
+   */
+  public static void setSlowEventHandlerDemotion(int overruns) {
+    StorageImpl.setDemotionThreshold(overruns);
+  }
+
+  /**
+   * Registers a handler for the StorageEvents fired when another window changes this Storage, which
+   * are not dispatched to the handlers registered with {@link
+   * #addStorageEventHandler(StorageEvent.Handler)}.
+   */
+  HandlerRegistration addCrossWindowEventHandler(StorageEvent.Handler handler) {
+    return StorageImpl.addCrossWindowEventHandler(storage, handler);
+  }
+
+  /**
+   * Registers a listener for the events of the specified type fired on the window of this Storage,
+   * if it is backed by the browser.
+   */
+  HandlerRegistration addWindowEventListener(String type, EventListener listener) {
+    return StorageImpl.addWindowEventListener(storage, type, listener);
+  }
+
   /**
    * Removes all items in the Storage.
    *
@@ -173,6 +248,87 @@ public final class Storage {
     impl.clear(storage);
   }
 
+  /**
+   * Sets the value associated with the specified key if its version is the expected one, and
+   * increments the version.
+   *
+   * <p>The version is read and the item written in a short critical section shared by the windows
+   * using this Storage, so that of two windows updating the same version, only one succeeds. The
+   * critical section never waits for another window: if one is updating an item of this Storage at
+   * the same time, the call fails even if the version matches, and should be retried like a version
+   * conflict, typically after reading the item again.
+   *
+   * <p>The critical section is held with two reserved items, whose keys start with <code>U+0000
+   * lock U+001F</code>. They are present while a compare-and-set runs, or for up to a second if a
+   * window stops in the middle of one, and are then enumerated by {@link #key(int)} and counted by
+   * {@link #getLength()}; the cross-window events for them are not dispatched.
+   *
+   * <p>The write fires a {@link StorageEvent} as {@link #setItem(String, String)} does. Its values
+   * can be decoded with {@link VersionedItem#fromItem(String)}, to detect the updates made by other
+   * windows to the items read by this one.
+   *
+   * @param key the key to a value in the Storage
+   * @param expectedVersion the version returned by {@link #getVersionedItem(String)}, or 0 if the
+   *     item is expected to be missing
+   * @param data the new value associated with the key
+   * @return <code>true</code> if the value was set, <code>false</code> if the item was updated or
+   *     was being updated by another window
+   * @see VersionedItem
+   */
+  public boolean compareAndSet(String key, int expectedVersion, String data) {
+    assert key.length() > 0;
+    assert data != null : "data cannot be null";
+    String owner =
+        Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+    if (!StorageImpl.tryLock(storage, owner)) {
+      return false;
+    }
+    try {
+      VersionedItem current = VersionedItem.fromItem(impl.getItem(storage, key));
+      int version = current == null ? 0 : current.getVersion();
+      if (version != expectedVersion) {
+        return false;
+      }
+      impl.setItem(storage, key, VersionedItem.toItem(data, version + 1));
+      return true;
+    } finally {
+      StorageImpl.unlock(storage, owner);
+    }
+  }
+
+  /**
+   * Returns the items in the Storage associated with the specified keys.
+   *
+   * @param keys the keys to values in the Storage
+   * @return the keys present in the Storage and their values, in the iteration order of <code>keys
+   *     </code>
+   * @see #getItem(String)
+   */
+  public Map<String, String> getAll(Collection<String> keys) {
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    for (String key : keys) {
+      String value = impl.getItem(storage, key);
+      if (value != null) {
+        items.put(key, value);
+      }
+    }
+    return items;
+  }
+
+  /**
+   * Returns the binary item in the Storage associated with the specified key.
+   *
+   * @param key the key to a value in the Storage
+   * @return the bytes associated with the given key, or <code>null</code> if there are none
+   * @throws IllegalArgumentException if the item was not set with {@link #setBytes(String, byte[])}
+   * @see Utf16BinaryEncoding
+   */
+  public byte[] getBytes(String key) {
+    String data = getItem(key);
+    return data == null ? null : Utf16BinaryEncoding.decode(data);
+  }
+
   /**
    * Returns the item in the Storage associated with the specified key.
    *
@@ -196,6 +352,32 @@ public final class Storage {
     return impl.getLength(storage);
   }
 
+  /**
+   * Returns the number of writes skipped because the value was unchanged since write deduplication
+   * was enabled.
+   *
+   * @see #setWriteDeduplication(boolean)
+   */
+  public int getSuppressedWriteCount() {
+    return StorageImpl.getSuppressedWriteCount(storage);
+  }
+
+  /**
+   * Returns the item in the Storage associated with the specified key, with its version.
+   *
+   * @param key the key to a value in the Storage
+   * @return the item, or <code>null</code> if there is none
+   * @see #compareAndSet(String, int, String)
+   */
+  public VersionedItem getVersionedItem(String key) {
+    return VersionedItem.fromItem(impl.getItem(storage, key));
+  }
+
+  /** Returns <code>true</code> if writes of unchanged values are skipped. */
+  public boolean isWriteDeduplication() {
+    return StorageImpl.isWriteDeduplication(storage);
+  }
+
   /**
    * Returns the key at the specified index.
    *
@@ -208,6 +390,51 @@ public final class Storage {
     return impl.key(storage, index);
   }
 
+  /**
+   * Sets all the specified items in the Storage, in iteration order.
+   *
+   * <p>Compared to calling {@link #setItem(String, String)} for each item, the previous values are
+   * only read if a {@link StorageEvent.Handler} is registered, and the storage events are fired
+   * once all items are written. A {@link StorageEvent.BatchHandler} is notified once, with the
+   * events of all the items; a plain {@link StorageEvent.Handler} still receives one event per
+   * item, as for the changes made by other windows.
+   *
+   * <p>The write is not transactional: if it fails part way, typically because the storage quota is
+   * exceeded, a {@link StoragePartialWriteException} tells which items were written.
+   *
+   * @param items the keys and values to set; the empty string may not be used as a key
+   * @throws StoragePartialWriteException if an item could not be written
+   */
+  public void putAll(Map<String, String> items) {
+    for (String key : items.keySet()) {
+      assert key.length() > 0;
+    }
+    impl.setItems(storage, items);
+  }
+
+  /**
+   * Returns a query over the items of this Storage, matching all of them until restricted.
+   *
+   * @see StorageQuery
+   */
+  public StorageQuery query() {
+    return new StorageQuery(this);
+  }
+
+  /**
+   * Removes all the items in the Storage associated with the specified keys.
+   *
+   * <p>The previous values are only read if a {@link StorageEvent.Handler} is registered, and the
+   * storage events are fired once all items are removed. A {@link StorageEvent.BatchHandler} is
+   * notified once, with the events of all the items; a plain {@link StorageEvent.Handler} still
+   * receives one event per item.
+   *
+   * @param keys the keys to values in the Storage
+   */
+  public void removeAll(Collection<String> keys) {
+    impl.removeItems(storage, keys);
+  }
+
   /**
    * Removes the item in the Storage associated with the specified key.
    *
@@ -219,6 +446,71 @@ public final class Storage {
     impl.removeItem(storage, key);
   }
 
+  /**
+   * Returns a page of at most <code>limit</code> items, sorted by key, whose keys start with the
+   * specified prefix and follow the specified cursor.
+   *
+   * <p>Pages are delimited by keys rather than by indexes, so that items added or removed between
+   * two calls neither shift the following pages nor cause items to be returned twice or skipped:
+   * an item present during the whole scan is returned exactly once, and an item added during the
+   * scan is returned if its key follows the cursor. Each call enumerates the keys but only reads
+   * the values of the page, and sorts at most <code>limit</code> keys.
+   *
+   * @param cursor the cursor returned by {@link StoragePage#getCursor()} for the previous page, or
+   *     <code>null</code> to get the first page
+   * @param limit the maximum number of items of the page
+   * @param prefix the prefix of the keys to return, or <code>null</code> to return all keys
+   * @return the page of items, with the cursor to get the next one
+   */
+  public StoragePage scan(String cursor, int limit, String prefix) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+    // the smallest keys after the cursor; one more than the limit tells if there is a next page
+    TreeSet<String> keys = new TreeSet<String>();
+    int length = impl.getLength(storage);
+    for (int i = 0; i < length; i++) {
+      String key = impl.key(storage, i);
+      if (key == null
+          || (prefix != null && !key.startsWith(prefix))
+          || (cursor != null && key.compareTo(cursor) <= 0)) {
+        continue;
+      }
+      if (keys.size() <= limit) {
+        keys.add(key);
+      } else if (key.compareTo(keys.last()) < 0) {
+        keys.pollLast();
+        keys.add(key);
+      }
+    }
+    boolean more = keys.size() > limit;
+    if (more) {
+      keys.pollLast();
+    }
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    for (String key : keys) {
+      String value = impl.getItem(storage, key);
+      if (value != null) {
+        items.put(key, value);
+      }
+    }
+    return new StoragePage(items, more ? keys.last() : null);
+  }
+
+  /**
+   * Sets the value in the Storage associated with the specified key to the specified bytes.
+   *
+   * <p>The bytes are stored with a dense encoding using one UTF-16 code unit per 15 bits, which
+   * uses 2.5 times less quota than base64.
+   *
+   * @param key the key to a value in the Storage
+   * @param data the bytes associated with the key
+   * @see Utf16BinaryEncoding
+   */
+  public void setBytes(String key, byte[] data) {
+    setItem(key, Utf16BinaryEncoding.encode(data));
+  }
+
   /**
    * Sets the value in the Storage associated with the specified key to the specified data.
    *
@@ -236,6 +528,21 @@ public final class Storage {
     impl.setItem(storage, key, data);
   }
 
+  /**
+   * Sets whether writes of unchanged values are skipped.
+   *
+   * <p>When enabled, {@link #setItem(String, String)} and {@link #putAll(Map)} compare each value
+   * with the stored one and neither write it nor fire a {@link StorageEvent} if they are equal. The
+   * skipped writes are counted by {@link #getSuppressedWriteCount()}. Disabled by default, as
+   * {@link #putAll(Map)} then reads the previous values even if no {@link StorageEvent.Handler} is
+   * registered.
+   *
+   * @param enabled <code>true</code> to skip writes of unchanged values
+   */
+  public void setWriteDeduplication(boolean enabled) {
+    StorageImpl.setWriteDeduplication(storage, enabled);
+  }
+
   // Still a separate class to prevent native calls on class load as it my break existing code.
   private static class StorageSupportDetector {
     static final boolean localStorageSupported = checkStorageSupport(StorageImpl.LOCAL_STORAGE);
@@ -243,10 +550,8 @@ public final class Storage {
 
     private static boolean checkStorageSupport(String storage) {
       String c = "_gwt_dummy_";
-      WebStorageWindow window = WebStorageWindow.of(DomGlobal.window);
-      final elemental2.webstorage.Storage storageObj =
-          storage.equals(StorageImpl.LOCAL_STORAGE) ? window.localStorage : window.sessionStorage;
       try {
+        StorageArea storageObj = StorageImpl.getStorageArea(storage);
         storageObj.setItem(c, c);
         storageObj.removeItem(c);
         return true;
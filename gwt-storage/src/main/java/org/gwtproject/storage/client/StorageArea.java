@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * The primitive operations of a single storage area, as defined by the W3C Web Storage Storage
+ * interface.
+ *
+ * <p>{@link StorageImpl} only talks to the browser through this interface, so that the rest of the
+ * library can also run on top of a non-native area.
+ *
+ * @see <a href="http://www.w3.org/TR/webstorage/#storage-0">W3C Web Storage - Storage</a>
+ */
+interface StorageArea {
+
+  void clear();
+
+  String getItem(String key);
+
+  int getLength();
+
+  String key(int index);
+
+  void removeItem(String key);
+
+  void setItem(String key, String data);
+}
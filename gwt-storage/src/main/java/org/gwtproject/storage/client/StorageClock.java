@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import elemental2.dom.DomGlobal;
+import org.gwtproject.core.client.GWT;
+
+/** High resolution timing used by the storage instrumentation. */
+final class StorageClock {
+
+  private StorageClock() {}
+
+  /**
+   * Returns a monotonic timestamp in milliseconds, with sub-millisecond resolution: <code>
+   * performance.now()</code> in the browser, {@link System#nanoTime()} on the JVM.
+   */
+  static double now() {
+    if (GWT.isScript()) {
+      return DomGlobal.performance.now();
+    }
+    return System.nanoTime() / 1000000.0;
+  }
+}
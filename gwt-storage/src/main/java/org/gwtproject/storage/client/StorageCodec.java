@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Converts values of a type to and from the compact positional format stored by {@link
+ * StorageObjectMap}.
+ *
+ * <p>Codecs are usually generated for {@link Storable} classes. The format is a JSON-like array
+ * holding the fields in declaration order, e.g. <code>[42,"foo",[1,2],null]</code>, with no field
+ * names.
+ *
+ * @param <T> the type of the values
+ */
+public interface StorageCodec<T> {
+
+  /**
+   * Writes the value, which may be <code>null</code>.
+   *
+   * @param writer the writer to append the value to
+   * @param value the value to write
+   */
+  void write(PositionalWriter writer, T value);
+
+  /**
+   * Reads a value written by {@link #write(PositionalWriter, Object)}.
+   *
+   * @param reader the reader positioned on the value
+   * @return the value, which may be <code>null</code>
+   */
+  T read(PositionalReader reader);
+
+  /**
+   * Returns the value encoded as a string.
+   *
+   * @param value the value to encode
+   */
+  default String encode(T value) {
+    PositionalWriter writer = new PositionalWriter();
+    write(writer, value);
+    return writer.toString();
+  }
+
+  /**
+   * Returns the value decoded from a string produced by {@link #encode(Object)}.
+   *
+   * @param encoded the encoded value
+   * @throws IllegalArgumentException if the string cannot be decoded
+   */
+  default T decode(String encoded) {
+    PositionalReader reader = new PositionalReader(encoded);
+    T value = read(reader);
+    reader.end();
+    return value;
+  }
+}
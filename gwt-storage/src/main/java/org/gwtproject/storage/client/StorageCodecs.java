@@ -0,0 +1,240 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** {@link StorageCodec}s for the field types supported in {@link Storable} classes. */
+public final class StorageCodecs {
+
+  public static final StorageCodec<String> STRING =
+      new StorageCodec<String>() {
+        @Override
+        public void write(PositionalWriter writer, String value) {
+          writer.writeString(value);
+        }
+
+        @Override
+        public String read(PositionalReader reader) {
+          return reader.readString();
+        }
+      };
+
+  public static final StorageCodec<Boolean> BOOLEAN =
+      new StorageCodec<Boolean>() {
+        @Override
+        public void write(PositionalWriter writer, Boolean value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeBoolean(value);
+          }
+        }
+
+        @Override
+        public Boolean read(PositionalReader reader) {
+          return reader.readNull() ? null : reader.readBoolean();
+        }
+      };
+
+  public static final StorageCodec<Byte> BYTE =
+      new StorageCodec<Byte>() {
+        @Override
+        public void write(PositionalWriter writer, Byte value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeInt(value);
+          }
+        }
+
+        @Override
+        public Byte read(PositionalReader reader) {
+          return reader.readNull() ? null : (byte) reader.readInt();
+        }
+      };
+
+  public static final StorageCodec<Short> SHORT =
+      new StorageCodec<Short>() {
+        @Override
+        public void write(PositionalWriter writer, Short value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeInt(value);
+          }
+        }
+
+        @Override
+        public Short read(PositionalReader reader) {
+          return reader.readNull() ? null : (short) reader.readInt();
+        }
+      };
+
+  public static final StorageCodec<Character> CHARACTER =
+      new StorageCodec<Character>() {
+        @Override
+        public void write(PositionalWriter writer, Character value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeInt(value);
+          }
+        }
+
+        @Override
+        public Character read(PositionalReader reader) {
+          return reader.readNull() ? null : (char) reader.readInt();
+        }
+      };
+
+  public static final StorageCodec<Integer> INTEGER =
+      new StorageCodec<Integer>() {
+        @Override
+        public void write(PositionalWriter writer, Integer value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeInt(value);
+          }
+        }
+
+        @Override
+        public Integer read(PositionalReader reader) {
+          return reader.readNull() ? null : reader.readInt();
+        }
+      };
+
+  public static final StorageCodec<Long> LONG =
+      new StorageCodec<Long>() {
+        @Override
+        public void write(PositionalWriter writer, Long value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeLong(value);
+          }
+        }
+
+        @Override
+        public Long read(PositionalReader reader) {
+          return reader.readNull() ? null : reader.readLong();
+        }
+      };
+
+  public static final StorageCodec<Float> FLOAT =
+      new StorageCodec<Float>() {
+        @Override
+        public void write(PositionalWriter writer, Float value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeDouble(value);
+          }
+        }
+
+        @Override
+        public Float read(PositionalReader reader) {
+          return reader.readNull() ? null : (float) reader.readDouble();
+        }
+      };
+
+  public static final StorageCodec<Double> DOUBLE =
+      new StorageCodec<Double>() {
+        @Override
+        public void write(PositionalWriter writer, Double value) {
+          if (value == null) {
+            writer.writeNull();
+          } else {
+            writer.writeDouble(value);
+          }
+        }
+
+        @Override
+        public Double read(PositionalReader reader) {
+          return reader.readNull() ? null : reader.readDouble();
+        }
+      };
+
+  /**
+   * Returns a codec storing enum constants by ordinal.
+   *
+   * @param constants the constants of the enum, as returned by its <code>values()</code> method
+   */
+  public static <E extends Enum<E>> StorageCodec<E> forEnum(final E[] constants) {
+    return new StorageCodec<E>() {
+      @Override
+      public void write(PositionalWriter writer, E value) {
+        if (value == null) {
+          writer.writeNull();
+        } else {
+          writer.writeInt(value.ordinal());
+        }
+      }
+
+      @Override
+      public E read(PositionalReader reader) {
+        if (reader.readNull()) {
+          return null;
+        }
+        int ordinal = reader.readInt();
+        if (ordinal < 0 || ordinal >= constants.length) {
+          throw new IllegalArgumentException("Unknown enum ordinal: " + ordinal);
+        }
+        return constants[ordinal];
+      }
+    };
+  }
+
+  /**
+   * Returns a codec storing lists as arrays of their elements.
+   *
+   * @param elementCodec the codec of the elements
+   */
+  public static <T> StorageCodec<List<T>> forList(final StorageCodec<T> elementCodec) {
+    return new StorageCodec<List<T>>() {
+      @Override
+      public void write(PositionalWriter writer, List<T> value) {
+        if (value == null) {
+          writer.writeNull();
+          return;
+        }
+        writer.beginArray();
+        for (T element : value) {
+          elementCodec.write(writer, element);
+        }
+        writer.endArray();
+      }
+
+      @Override
+      public List<T> read(PositionalReader reader) {
+        if (reader.readNull()) {
+          return null;
+        }
+        List<T> value = new ArrayList<T>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          value.add(elementCodec.read(reader));
+        }
+        reader.endArray();
+        return value;
+      }
+    };
+  }
+
+  private StorageCodecs() {}
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.gwtproject.core.client.Scheduler;
+
+/**
+ * Stores many small records in a {@link Storage} packed into pages, one item per page.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>Storing each record under its own key makes {@link Storage#getLength()}, key enumeration and
+ * storage events scale with the number of records. A collection instead stores up to a fixed number
+ * of records per page, under the collection name, the <code>U+001F</code> separator and the page
+ * id, plus a directory item (the name, the separator and <code>dir</code>) listing the records of
+ * each page.
+ *
+ * <p>Only the directory is read when the collection is first used; pages are read when one of their
+ * records is accessed and kept in a bounded cache. Changes are applied to the cached pages and
+ * written after the current event loop task (or on {@link #flush()}), rewriting only the pages that
+ * changed, with a single bulk write.
+ *
+ * <p>The cache is not updated when another window changes the collection; call {@link #reload()}
+ * from a storage event handler if that can happen.
+ */
+public class StorageCollection {
+
+  /** The default maximum number of records per page. */
+  public static final int DEFAULT_PAGE_SIZE = 64;
+
+  /** The default maximum number of pages kept in memory. */
+  public static final int DEFAULT_CACHE_SIZE = 16;
+
+  private static final char SEPARATOR = '\u001F';
+
+  /*
+   * Records of a page; the values are only present while the page is loaded
+   */
+  private static final class Page {
+    final int id;
+    final Set<String> recordIds = new LinkedHashSet<String>();
+    Map<String, String> records;
+    boolean dirty;
+
+    Page(int id) {
+      this.id = id;
+    }
+  }
+
+  private final Storage storage;
+  private final String name;
+  private final int pageSize;
+  private final int cacheSize;
+
+  private List<Page> pages;
+  private Map<String, Page> recordPages;
+  private int nextPageId;
+  // loaded pages, least recently used first
+  private final Map<Page, Boolean> loadedPages = new LinkedHashMap<Page, Boolean>(16, 0.75f, true);
+  private final List<Page> removedPages = new ArrayList<Page>();
+  private boolean directoryDirty;
+  private boolean flushScheduled;
+
+  /**
+   * Creates a collection with pages of {@link #DEFAULT_PAGE_SIZE} records and a cache of {@link
+   * #DEFAULT_CACHE_SIZE} pages.
+   *
+   * @param storage the storage holding the pages
+   * @param name the name of the collection, prefixing its keys
+   */
+  public StorageCollection(Storage storage, String name) {
+    this(storage, name, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a collection.
+   *
+   * @param storage the storage holding the pages
+   * @param name the name of the collection, prefixing its keys
+   * @param pageSize the maximum number of records per page
+   * @param cacheSize the maximum number of unchanged pages kept in memory
+   */
+  public StorageCollection(Storage storage, String name, int pageSize, int cacheSize) {
+    assert storage != null : "storage cannot be null";
+    assert name != null && !name.isEmpty() : "name cannot be empty";
+    assert pageSize > 0 : "pageSize must be positive";
+    assert cacheSize > 0 : "cacheSize must be positive";
+    this.storage = storage;
+    this.name = name;
+    this.pageSize = pageSize;
+    this.cacheSize = cacheSize;
+  }
+
+  /** Returns the name of the collection. */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the record with the specified id, or <code>null</code> if there is none.
+   *
+   * @param id the id of the record
+   */
+  public String get(String id) {
+    Page page = getDirectory().get(id);
+    return page == null ? null : load(page).get(id);
+  }
+
+  /** Returns <code>true</code> if the collection has a record with the specified id. */
+  public boolean contains(String id) {
+    return getDirectory().containsKey(id);
+  }
+
+  /**
+   * Adds or replaces the record with the specified id.
+   *
+   * @param id the id of the record
+   * @param value the record (not <code>null</code>)
+   */
+  public void put(String id, String value) {
+    if (id == null || value == null) {
+      throw new NullPointerException();
+    }
+    Page page = getDirectory().get(id);
+    if (page == null) {
+      page = getPageWithRoom();
+      page.recordIds.add(id);
+      recordPages.put(id, page);
+      directoryDirty = true;
+    }
+    load(page).put(id, value);
+    markDirty(page);
+  }
+
+  /**
+   * Removes the record with the specified id.
+   *
+   * @param id the id of the record
+   * @return <code>true</code> if there was such a record
+   */
+  public boolean remove(String id) {
+    Page page = getDirectory().remove(id);
+    if (page == null) {
+      return false;
+    }
+    page.recordIds.remove(id);
+    directoryDirty = true;
+    if (page.recordIds.isEmpty()) {
+      pages.remove(page);
+      loadedPages.remove(page);
+      removedPages.add(page);
+      scheduleFlush();
+    } else {
+      load(page).remove(id);
+      markDirty(page);
+    }
+    return true;
+  }
+
+  /** Returns the number of records. */
+  public int size() {
+    return getDirectory().size();
+  }
+
+  /** Returns the ids of all records, in page order. */
+  public List<String> getIds() {
+    getDirectory();
+    List<String> ids = new ArrayList<String>(recordPages.size());
+    for (Page page : pages) {
+      ids.addAll(page.recordIds);
+    }
+    return ids;
+  }
+
+  /** Returns the number of pages, i.e. of Storage items besides the directory. */
+  public int getPageCount() {
+    return getDirectory().isEmpty() ? 0 : pages.size();
+  }
+
+  /** Removes all records. */
+  public void clear() {
+    getDirectory();
+    removedPages.addAll(pages);
+    pages.clear();
+    recordPages.clear();
+    loadedPages.clear();
+    directoryDirty = true;
+    scheduleFlush();
+  }
+
+  /** Writes the changed pages and the directory now. */
+  public void flush() {
+    if (pages == null) {
+      return;
+    }
+    Map<String, String> writes = new LinkedHashMap<String, String>();
+    for (Page page : pages) {
+      if (page.dirty) {
+        writes.put(pageKey(page.id), encodePage(page));
+        page.dirty = false;
+      }
+    }
+    List<String> removals = new ArrayList<String>();
+    for (Page page : removedPages) {
+      removals.add(pageKey(page.id));
+    }
+    removedPages.clear();
+    if (directoryDirty) {
+      if (pages.isEmpty()) {
+        removals.add(directoryKey());
+      } else {
+        writes.put(directoryKey(), encodeDirectory());
+      }
+      directoryDirty = false;
+    }
+    if (!writes.isEmpty()) {
+      storage.putAll(writes);
+    }
+    if (!removals.isEmpty()) {
+      storage.removeAll(removals);
+    }
+    evict(null);
+  }
+
+  /** Discards all cached pages, after writing pending changes, so that they are read again. */
+  public void reload() {
+    flush();
+    pages = null;
+    recordPages = null;
+    loadedPages.clear();
+  }
+
+  private String directoryKey() {
+    return name + SEPARATOR + "dir";
+  }
+
+  private String pageKey(int id) {
+    return name + SEPARATOR + id;
+  }
+
+  /*
+   * Reads the directory on first use; returns the page of each record
+   */
+  private Map<String, Page> getDirectory() {
+    if (recordPages != null) {
+      return recordPages;
+    }
+    pages = new ArrayList<Page>();
+    recordPages = new HashMap<String, Page>();
+    nextPageId = 0;
+    String directory = storage.getItem(directoryKey());
+    if (directory == null) {
+      return recordPages;
+    }
+    // [nextPageId,[pageId,recordId...]...]
+    PositionalReader reader = new PositionalReader(directory);
+    reader.beginArray();
+    nextPageId = reader.readInt();
+    while (reader.hasNext()) {
+      reader.beginArray();
+      Page page = new Page(reader.readInt());
+      while (reader.hasNext()) {
+        String id = reader.readString();
+        page.recordIds.add(id);
+        recordPages.put(id, page);
+      }
+      reader.endArray();
+      pages.add(page);
+    }
+    reader.endArray();
+    return recordPages;
+  }
+
+  private String encodeDirectory() {
+    PositionalWriter writer = new PositionalWriter().beginArray().writeInt(nextPageId);
+    for (Page page : pages) {
+      writer.beginArray().writeInt(page.id);
+      for (String id : page.recordIds) {
+        writer.writeString(id);
+      }
+      writer.endArray();
+    }
+    return writer.endArray().toString();
+  }
+
+  /*
+   * Returns the records of a page, reading it if it is not cached
+   */
+  private Map<String, String> load(Page page) {
+    if (page.records == null) {
+      page.records = new HashMap<String, String>();
+      String item = storage.getItem(pageKey(page.id));
+      if (item != null) {
+        // [recordId,value,recordId,value...]
+        PositionalReader reader = new PositionalReader(item);
+        reader.beginArray();
+        while (reader.hasNext()) {
+          page.records.put(reader.readString(), reader.readString());
+        }
+        reader.endArray();
+      }
+      loadedPages.put(page, Boolean.TRUE);
+      evict(page);
+    } else {
+      loadedPages.get(page);
+    }
+    return page.records;
+  }
+
+  private String encodePage(Page page) {
+    PositionalWriter writer = new PositionalWriter().beginArray();
+    for (String id : page.recordIds) {
+      writer.writeString(id).writeString(page.records.get(id));
+    }
+    return writer.endArray().toString();
+  }
+
+  private Page getPageWithRoom() {
+    // the last page is usually the one with room
+    for (int i = pages.size() - 1; i >= 0; i--) {
+      if (pages.get(i).recordIds.size() < pageSize) {
+        return pages.get(i);
+      }
+    }
+    Page page = new Page(nextPageId++);
+    page.records = new HashMap<String, String>();
+    pages.add(page);
+    loadedPages.put(page, Boolean.TRUE);
+    return page;
+  }
+
+  private void markDirty(Page page) {
+    page.dirty = true;
+    scheduleFlush();
+  }
+
+  /*
+   * Drops the least recently used unchanged pages beyond the cache size, except the one being
+   * loaded
+   */
+  private void evict(Page loading) {
+    Iterator<Page> it = loadedPages.keySet().iterator();
+    int excess = loadedPages.size() - cacheSize;
+    while (excess > 0 && it.hasNext()) {
+      Page page = it.next();
+      if (!page.dirty && page != loading) {
+        it.remove();
+        page.records = null;
+        excess--;
+      }
+    }
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                flushScheduled = false;
+                flush();
+              }
+            });
+  }
+}
@@ -16,6 +16,7 @@
 
 package org.gwtproject.storage.client;
 
+import java.util.List;
 import jsinterop.annotations.JsConstructor;
 import jsinterop.annotations.JsOverlay;
 import jsinterop.annotations.JsPackage;
@@ -63,6 +64,27 @@ public final class StorageEvent {
     void onStorageChange(StorageEvent event);
   }
 
+  /**
+   * Represents an Event handler receiving {@link StorageEvent}s in batches.
+   *
+   * <p>Apply your BatchHandler using {@link
+   * Storage#addStorageEventBatchHandler(StorageEvent.BatchHandler)}.
+   *
+   * @see StorageEvent
+   */
+  public interface BatchHandler {
+    /**
+     * Invoked once per microtask with the StorageEvents fired since the previous invocation.
+     *
+     * <p>Changes of the same key are coalesced into a single event carrying the old value of the
+     * first change and the new value of the last one. Events are in the order of the first change
+     * of each key; a clear() is delivered in place and is never coalesced with other events.
+     *
+     * @param events the fired StorageEvents, never empty
+     */
+    void onStorageChanges(List<StorageEvent> events);
+  }
+
   @JsConstructor
   private StorageEvent(String type, Object init) {}
 
@@ -86,6 +108,26 @@ public final class StorageEvent {
     return storageEvent;
   }
 
+  /**
+   * Returns an event describing both changes of a key: the old value of <code>first</code> and
+   * the new value of <code>last</code>.
+   *
+   * @param first the earlier event
+   * @param last the later event, on the same key and storage area
+   * @return the newly created event object
+   */
+  @JsOverlay
+  static StorageEvent coalesce(StorageEvent first, StorageEvent last) {
+    final JsPropertyMap<Object> lastSe = Js.cast(last);
+    JsPropertyMap<Object> init = JsPropertyMap.of();
+    init.set("key", last.getKey());
+    init.set("oldValue", first.getOldValue());
+    init.set("newValue", last.getNewValue());
+    init.set("url", last.getUrl());
+    init.set("storageArea", lastSe.get("storageArea"));
+    return createEvent(init);
+  }
+
   /**
    * Returns the key being changed.
    *
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import elemental2.promise.Promise;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.core.client.GWT;
+
+/**
+ * Queues {@link StorageEvent}s and delivers them to the {@link StorageEvent.BatchHandler}s once per
+ * microtask, coalescing the changes of each key.
+ */
+class StorageEventBatcher {
+  private final List<StorageEvent.BatchHandler> handlers =
+      new ArrayList<StorageEvent.BatchHandler>();
+  private List<StorageEvent> pending = new ArrayList<StorageEvent>();
+  // Index in pending of the coalescable event of each storage area and key
+  private final Map<String, Integer> pendingIndexes = new HashMap<String, Integer>();
+  private boolean flushScheduled;
+
+  void add(StorageEvent.BatchHandler handler) {
+    handlers.add(handler);
+  }
+
+  void remove(StorageEvent.BatchHandler handler) {
+    handlers.remove(handler);
+  }
+
+  boolean isEmpty() {
+    return handlers.isEmpty();
+  }
+
+  /** Queues the event for the next delivery, merging it with a pending event on the same key. */
+  void enqueue(StorageEvent event) {
+    String key = event.getKey();
+    if (key == null) {
+      // a clear() ends all coalescing: later changes must be delivered after it
+      pendingIndexes.clear();
+      pending.add(event);
+    } else {
+      String id = areaOf(event) + ":" + key;
+      Integer index = pendingIndexes.get(id);
+      if (index == null) {
+        pendingIndexes.put(id, pending.size());
+        pending.add(event);
+      } else {
+        pending.set(index, StorageEvent.coalesce(pending.get(index), event));
+      }
+    }
+    scheduleFlush();
+  }
+
+  private static String areaOf(StorageEvent event) {
+    return Storage.getLocalStorageIfSupported() == event.getStorageArea()
+        ? StorageImpl.LOCAL_STORAGE
+        : StorageImpl.SESSION_STORAGE;
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Promise.resolve((Object) null)
+        .then(
+            ignored -> {
+              flush();
+              return null;
+            });
+  }
+
+  private void flush() {
+    flushScheduled = false;
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<StorageEvent> events = Collections.unmodifiableList(pending);
+    pending = new ArrayList<StorageEvent>();
+    pendingIndexes.clear();
+    // copy, so that handlers may remove themselves
+    for (StorageEvent.BatchHandler handler : new ArrayList<StorageEvent.BatchHandler>(handlers)) {
+      try {
+        handler.onStorageChanges(events);
+      } catch (Throwable t) {
+        GWT.reportUncaughtException(t);
+      }
+    }
+  }
+}
@@ -22,12 +22,17 @@ import elemental2.dom.Event;
 import elemental2.dom.EventListener;
 import elemental2.webstorage.WebStorageWindow;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import jsinterop.annotations.JsFunction;
 import jsinterop.base.Js;
 import org.gwtproject.core.client.GWT;
+import org.gwtproject.core.client.Scheduler;
 import org.gwtproject.event.shared.HandlerRegistration;
 
 /**
@@ -45,6 +50,8 @@ class StorageImpl {
 
   protected static List<StorageEvent.Handler> storageEventHandlers;
 
+  protected static StorageEventBatcher storageEventBatcher;
+
   @JsFunction
   private interface NativeCallback {
     void onEvent(StorageEvent event);
@@ -52,34 +59,342 @@ class StorageImpl {
 
   protected static EventListener jsHandler;
 
-  private static Map<String, elemental2.webstorage.Storage> nameToStorage =
-      new HashMap<String, elemental2.webstorage.Storage>();
+  // Items of the critical section of tryLock, and how long an abandoned lock blocks the others
+  static final String LOCK_PREFIX = "\u0000lock\u001F";
+  static final String LOCK_X = LOCK_PREFIX + "x";
+  static final String LOCK_Y = LOCK_PREFIX + "y";
+  static final long LOCK_TIMEOUT_MILLIS = 1000;
+
+  private static double handlerBudgetMillis;
+  private static int demotionThreshold;
+  private static Map<StorageEvent.Handler, Integer> handlerOverruns;
+
+  private static Map<String, StorageArea> nameToStorage = new HashMap<String, StorageArea>();
+  // storages bound to the browser's storage objects, which other windows may change
+  private static Set<String> browserStorages = new HashSet<String>();
+
+  // storage -> number of suppressed writes, for the storages deduplicating writes
+  private static Map<String, Integer> suppressedWrites = new HashMap<String, Integer>();
+
+  /**
+   * Returns the {@link StorageArea} backing the given storage, binding it to the browser's native
+   * storage object on first access.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   */
+  static StorageArea getStorageArea(String storage) {
+    StorageArea area = nameToStorage.get(storage);
+    if (area == null) {
+      WebStorageWindow storageWindow = WebStorageWindow.of(window);
+      elemental2.webstorage.Storage storageObj =
+          LOCAL_STORAGE.equals(storage) ? storageWindow.localStorage : storageWindow.sessionStorage;
+      setStorageArea(storage, new NativeStorageArea(storageObj));
+      browserStorages.add(storage);
+      area = nameToStorage.get(storage);
+    }
+    return area;
+  }
+
+  /**
+   * Replaces the {@link StorageArea} backing the given storage.
+   *
+   * <p>Must be called before the storage is first used, typically to run the library outside of a
+   * browser (e.g. in the JVM benchmarks).
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param area the area to use from now on
+   */
+  static void setStorageArea(String storage, StorageArea area) {
+    nameToStorage.put(storage, area);
+    browserStorages.remove(storage);
+  }
+
+  /**
+   * Registers a handler for the StorageEvents fired by the browser when another window changes the
+   * given storage.
+   *
+   * <p>{@link StorageImplNonNativeEvents} only dispatches the events it emulates for the changes
+   * made by this window, so the browser's events are listened to separately. Nothing is registered
+   * if the storage is not backed by the browser.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param handler the handler, receiving the events of all storages
+   * @return {@link HandlerRegistration} used to remove this handler
+   */
+  static HandlerRegistration addCrossWindowEventHandler(
+      String storage, final StorageEvent.Handler handler) {
+    return addWindowEventListener(
+        storage,
+        "storage",
+        new EventListener() {
+          @Override
+          public void handleEvent(Event event) {
+            StorageEvent storageEvent = Js.<StorageEvent>uncheckedCast(event);
+            String key = storageEvent.getKey();
+            // the items of the critical section are not the application's
+            if (key == null || !key.startsWith(LOCK_PREFIX)) {
+              handler.onStorageChange(storageEvent);
+            }
+          }
+        });
+  }
+
+  /**
+   * Registers a listener for the events of the specified type fired on the window, e.g. <code>
+   * pagehide</code>. Nothing is registered if the storage is not backed by the browser.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param type the type of the events
+   * @param listener the listener
+   * @return {@link HandlerRegistration} used to remove this listener
+   */
+  static HandlerRegistration addWindowEventListener(
+      String storage, final String type, final EventListener listener) {
+    getStorageArea(storage);
+    if (!browserStorages.contains(storage)) {
+      return new HandlerRegistration() {
+        @Override
+        public void removeHandler() {}
+      };
+    }
+    window.addEventListener(type, listener, false);
+    return new HandlerRegistration() {
+      @Override
+      public void removeHandler() {
+        window.removeEventListener(type, listener, false);
+      }
+    };
+  }
+
+  /**
+   * Tries to enter the critical section of the given storage, shared by all the windows using it.
+   *
+   * <p>This is the fast path of Lamport's fast mutual exclusion algorithm, over two items written
+   * directly to the area, so that no StorageEvent is fired for them in this window; the events
+   * other windows receive for them are not dispatched to the cross-window handlers either. Instead
+   * of waiting, the attempt fails as soon as another window is seen contending, so it never
+   * blocks. As in Lamport's algorithm, a losing attempt never clears the second item, which another
+   * window may have entered the critical section with, even if it was overwritten by this attempt;
+   * only the window leaving the critical section clears it. A window which crashes in the critical
+   * section leaves the second item set, which then expires after {@link #LOCK_TIMEOUT_MILLIS}.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param owner a unique id of the attempt
+   * @return <code>true</code> if the critical section was entered, and must be left with {@link
+   *     #unlock(String, String)}
+   */
+  static boolean tryLock(String storage, String owner) {
+    return tryLock(getStorageArea(storage), owner);
+  }
+
+  static boolean tryLock(StorageArea area, String owner) {
+    long now = System.currentTimeMillis();
+    area.setItem(LOCK_X, owner);
+    String y = area.getItem(LOCK_Y);
+    if (y != null && Long.parseLong(y.substring(y.indexOf(':') + 1)) > now) {
+      removeOwnItem(area, LOCK_X, owner);
+      return false;
+    }
+    area.setItem(LOCK_Y, owner + ":" + (now + LOCK_TIMEOUT_MILLIS));
+    if (!owner.equals(area.getItem(LOCK_X))) {
+      // another window is contending: the one which wrote the first item last may enter
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Leaves the critical section entered with {@link #tryLock(String, String)}.
+   *
+   * <p>The second item is cleared even if it names another window, whose losing attempt overwrote
+   * it while this window was in the critical section; the first item is only removed if it is still
+   * this window's.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param owner the id of the attempt which entered the critical section
+   */
+  static void unlock(String storage, String owner) {
+    unlock(getStorageArea(storage), owner);
+  }
+
+  static void unlock(StorageArea area, String owner) {
+    area.removeItem(LOCK_Y);
+    removeOwnItem(area, LOCK_X, owner);
+  }
 
-  static {
-    nameToStorage.put(LOCAL_STORAGE, WebStorageWindow.of(window).localStorage);
-    nameToStorage.put(SESSION_STORAGE, WebStorageWindow.of(window).sessionStorage);
+  private static void removeOwnItem(StorageArea area, String key, String owner) {
+    String item = area.getItem(key);
+    if (item != null && (item.equals(owner) || item.startsWith(owner + ":"))) {
+      area.removeItem(key);
+    }
   }
 
-  /** Handles StorageEvents if a {@link StorageEvent.Handler} is registered. */
+  /**
+   * Handles StorageEvents if a {@link StorageEvent.Handler} or a {@link StorageEvent.BatchHandler}
+   * is registered.
+   */
   protected static final void handleStorageEvent(StorageEvent event) {
-    if (!hasStorageEventHandlers()) {
+    if (storageEventBatcher != null && !storageEventBatcher.isEmpty()) {
+      storageEventBatcher.enqueue(event);
+    }
+    if (storageEventHandlers == null) {
       return;
     }
     for (StorageEvent.Handler handler : storageEventHandlers) {
+      if (isDemoted(handler)) {
+        deliverDeferred(handler, event);
+        continue;
+      }
+      double start = StorageMetrics.ENABLED || handlerBudgetMillis > 0 ? StorageClock.now() : 0;
       try {
         handler.onStorageChange(event);
       } catch (Throwable t) {
         GWT.reportUncaughtException(t);
       }
+      if (StorageMetrics.ENABLED) {
+        StorageMetrics.recordDispatch(handler, start);
+      }
+      if (handlerBudgetMillis > 0) {
+        checkBudget(handler, event, StorageClock.now() - start);
+      }
+    }
+  }
+
+  /**
+   * Sets the time a handler may spend on a single event before it is reported as slow.
+   *
+   * @param budgetMillis the budget in milliseconds, <code>0</code> to disable the check
+   */
+  static void setHandlerBudget(double budgetMillis) {
+    handlerBudgetMillis = budgetMillis;
+    handlerOverruns = null;
+  }
+
+  /**
+   * Sets the number of budget overruns after which a handler only receives events deferred.
+   *
+   * @param overruns the number of overruns, <code>0</code> to never demote handlers
+   */
+  static void setDemotionThreshold(int overruns) {
+    demotionThreshold = overruns;
+    handlerOverruns = null;
+  }
+
+  private static boolean isDemoted(StorageEvent.Handler handler) {
+    if (demotionThreshold <= 0 || handlerOverruns == null) {
+      return false;
+    }
+    Integer overruns = handlerOverruns.get(handler);
+    return overruns != null && overruns >= demotionThreshold;
+  }
+
+  private static void checkBudget(
+      StorageEvent.Handler handler, StorageEvent event, double elapsedMillis) {
+    if (elapsedMillis <= handlerBudgetMillis) {
+      return;
+    }
+    boolean demoted = false;
+    if (demotionThreshold > 0) {
+      if (handlerOverruns == null) {
+        handlerOverruns = new HashMap<StorageEvent.Handler, Integer>();
+      }
+      Integer previous = handlerOverruns.get(handler);
+      int overruns = previous == null ? 1 : previous + 1;
+      handlerOverruns.put(handler, overruns);
+      demoted = overruns == demotionThreshold;
     }
+    GWT.reportUncaughtException(
+        new SlowStorageEventHandlerException(
+            handler,
+            event == null ? null : event.getKey(),
+            elapsedMillis,
+            handlerBudgetMillis,
+            demoted));
+  }
+
+  private static void deliverDeferred(
+      final StorageEvent.Handler handler, final StorageEvent event) {
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                if (!storageEventHandlers.contains(handler)) {
+                  return; // removed in the meantime
+                }
+                try {
+                  handler.onStorageChange(event);
+                } catch (Throwable t) {
+                  GWT.reportUncaughtException(t);
+                }
+              }
+            });
   }
 
   /**
-   * Returns <code>true</code> if at least one StorageEvent handler is registered, <code>false
-   * </code> otherwise.
+   * Sets whether writes of unchanged values to the given storage are skipped.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param enabled <code>true</code> to skip unchanged writes
+   */
+  static void setWriteDeduplication(String storage, boolean enabled) {
+    if (!enabled) {
+      suppressedWrites.remove(storage);
+    } else if (!suppressedWrites.containsKey(storage)) {
+      suppressedWrites.put(storage, 0);
+    }
+  }
+
+  static boolean isWriteDeduplication(String storage) {
+    return suppressedWrites.containsKey(storage);
+  }
+
+  /**
+   * Returns the number of writes skipped because the value was unchanged, since deduplication was
+   * enabled for the given storage.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   */
+  static int getSuppressedWriteCount(String storage) {
+    Integer count = suppressedWrites.get(storage);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Returns <code>true</code>, and counts the write as suppressed, if the given storage
+   * deduplicates writes and the new value equals the current one.
+   */
+  protected static boolean suppressWrite(String storage, String oldValue, String data) {
+    Integer count = suppressedWrites.get(storage);
+    if (count == null || !data.equals(oldValue)) {
+      return false;
+    }
+    suppressedWrites.put(storage, count + 1);
+    return true;
+  }
+
+  /**
+   * Returns the items whose value differs from the given current values, counting the others as
+   * suppressed writes.
+   */
+  protected static Map<String, String> withoutUnchanged(
+      String storage, Map<String, String> items, Map<String, String> oldValues) {
+    Map<String, String> changed = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, String> item : items.entrySet()) {
+      if (!suppressWrite(storage, oldValues.get(item.getKey()), item.getValue())) {
+        changed.put(item.getKey(), item.getValue());
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Returns <code>true</code> if at least one StorageEvent handler or batch handler is registered,
+   * <code>false</code> otherwise.
    */
   protected static boolean hasStorageEventHandlers() {
-    return storageEventHandlers != null && !storageEventHandlers.isEmpty();
+    return (storageEventHandlers != null && !storageEventHandlers.isEmpty())
+        || (storageEventBatcher != null && !storageEventBatcher.isEmpty());
   }
 
   /** This class can never be instantiated by itself. */
@@ -94,8 +409,9 @@ class StorageImpl {
    * @return {@link HandlerRegistration} used to remove this handler
    */
   public HandlerRegistration addStorageEventHandler(final StorageEvent.Handler handler) {
+    boolean listening = hasStorageEventHandlers();
     getStorageEventHandlers().add(handler);
-    if (storageEventHandlers.size() == 1) {
+    if (!listening) {
       addStorageEventHandler0();
     }
 
@@ -107,6 +423,30 @@ class StorageImpl {
     };
   }
 
+  /**
+   * Registers a batch handler for StorageEvents.
+   *
+   * @param handler
+   * @return {@link HandlerRegistration} used to remove this handler
+   */
+  public HandlerRegistration addStorageEventBatchHandler(final StorageEvent.BatchHandler handler) {
+    boolean listening = hasStorageEventHandlers();
+    if (storageEventBatcher == null) {
+      storageEventBatcher = new StorageEventBatcher();
+    }
+    storageEventBatcher.add(handler);
+    if (!listening) {
+      addStorageEventHandler0();
+    }
+
+    return new HandlerRegistration() {
+      @Override
+      public void removeHandler() {
+        removeStorageEventBatchHandler(handler);
+      }
+    };
+  }
+
   /**
    * Removes all items in the Storage.
    *
@@ -115,7 +455,7 @@ class StorageImpl {
    *     Storage.clear()</a>
    */
   public void clear(String storage) {
-    nameToStorage.get(storage).clear();
+    getStorageArea(storage).clear();
   };
 
   /**
@@ -128,7 +468,7 @@ class StorageImpl {
    *     Storage.getItem(k)</a>
    */
   public String getItem(String storage, String key) {
-    return nameToStorage.get(storage).getItem(key);
+    return getStorageArea(storage).getItem(key);
   }
 
   /**
@@ -140,7 +480,7 @@ class StorageImpl {
    *     Storage.length()</a>
    */
   public int getLength(String storage) {
-    return nameToStorage.get(storage).getLength();
+    return getStorageArea(storage).getLength();
   };
 
   /**
@@ -158,8 +498,8 @@ class StorageImpl {
     // <a href="http://www.w3.org/TR/webstorage/#dom-storage-key">
     // "If n is greater than or equal to the number of key/value pairs in the
     // object, then this method must return null."
-    return (index >= 0 && index < nameToStorage.get(storage).getLength())
-        ? nameToStorage.get(storage).key(index)
+    return (index >= 0 && index < getStorageArea(storage).getLength())
+        ? getStorageArea(storage).key(index)
         : null;
   };
 
@@ -172,7 +512,7 @@ class StorageImpl {
    *     Storage.removeItem(k)</a>
    */
   public void removeItem(String storage, String key) {
-    nameToStorage.get(storage).removeItem(key);
+    getStorageArea(storage).removeItem(key);
   }
 
   /**
@@ -184,7 +524,25 @@ class StorageImpl {
    */
   public void removeStorageEventHandler(StorageEvent.Handler handler) {
     getStorageEventHandlers().remove(handler);
-    if (storageEventHandlers.isEmpty()) {
+    if (handlerOverruns != null) {
+      handlerOverruns.remove(handler);
+    }
+    if (!hasStorageEventHandlers()) {
+      removeStorageEventHandler0();
+    }
+  }
+
+  /**
+   * De-registers a batch handler for StorageEvents.
+   *
+   * @param handler
+   */
+  public void removeStorageEventBatchHandler(StorageEvent.BatchHandler handler) {
+    if (storageEventBatcher == null) {
+      return;
+    }
+    storageEventBatcher.remove(handler);
+    if (!hasStorageEventHandlers()) {
       removeStorageEventHandler0();
     }
   }
@@ -199,7 +557,68 @@ class StorageImpl {
    *     Storage.setItem(k,v)</a>
    */
   public void setItem(String storage, String key, String data) {
-    nameToStorage.get(storage).setItem(key, data);
+    StorageArea area = getStorageArea(storage);
+    if (isWriteDeduplication(storage) && suppressWrite(storage, area.getItem(key), data)) {
+      return;
+    }
+    area.setItem(key, data);
+  }
+
+  /**
+   * Sets all the given items in the Storage, in iteration order.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param items the keys and values to set
+   * @throws StoragePartialWriteException if a write fails, typically on quota errors
+   */
+  public void setItems(String storage, Map<String, String> items) {
+    if (isWriteDeduplication(storage)) {
+      items = withoutUnchanged(storage, items, readItems(storage, items.keySet()));
+    }
+    writeItems(storage, items);
+  }
+
+  /**
+   * Sets all the given items in the Storage, in iteration order, without deduplication.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param items the keys and values to set
+   * @throws StoragePartialWriteException if a write fails, typically on quota errors
+   */
+  protected void writeItems(String storage, Map<String, String> items) {
+    StorageArea area = getStorageArea(storage);
+    List<String> written = new ArrayList<String>(items.size());
+    for (Map.Entry<String, String> item : items.entrySet()) {
+      try {
+        area.setItem(item.getKey(), item.getValue());
+      } catch (RuntimeException e) {
+        throw new StoragePartialWriteException(written, item.getKey(), e);
+      }
+      written.add(item.getKey());
+    }
+  }
+
+  /**
+   * Removes all the given items from the Storage.
+   *
+   * @param storage either {@link #LOCAL_STORAGE} or {@link #SESSION_STORAGE}
+   * @param keys the keys to remove
+   */
+  public void removeItems(String storage, Collection<String> keys) {
+    StorageArea area = getStorageArea(storage);
+    for (String key : keys) {
+      area.removeItem(key);
+    }
+  }
+
+  /** Returns the current values of the given keys, including <code>null</code> ones. */
+  protected Map<String, String> readItems(String storage, Collection<String> keys) {
+    StorageArea area = getStorageArea(storage);
+    Map<String, String> values = new HashMap<String, String>();
+    for (String key : keys) {
+      values.put(key, area.getItem(key));
+    }
+    return values;
   }
 
   protected void addStorageEventHandler0() {
@@ -231,7 +650,7 @@ class StorageImpl {
    */
   protected Storage getStorageFromEvent(StorageEvent event) {
     elemental2.webstorage.StorageEvent event1 = Js.uncheckedCast(event);
-    if (event1.storageArea == nameToStorage.get("localStorage")) {
+    if (event1.storageArea == WebStorageWindow.of(window).localStorage) {
       return Storage.getLocalStorageIfSupported();
     } else {
       return Storage.getSessionStorageIfSupported();
@@ -241,4 +660,43 @@ class StorageImpl {
   protected void removeStorageEventHandler0() {
     window.removeEventListener("storage", StorageImpl.jsHandler, false);
   }
+
+  /** A {@link StorageArea} delegating to the browser's native Storage object. */
+  private static class NativeStorageArea implements StorageArea {
+    private final elemental2.webstorage.Storage storage;
+
+    NativeStorageArea(elemental2.webstorage.Storage storage) {
+      this.storage = storage;
+    }
+
+    @Override
+    public void clear() {
+      storage.clear();
+    }
+
+    @Override
+    public String getItem(String key) {
+      return storage.getItem(key);
+    }
+
+    @Override
+    public int getLength() {
+      return storage.getLength();
+    }
+
+    @Override
+    public String key(int index) {
+      return storage.key(index);
+    }
+
+    @Override
+    public void removeItem(String key) {
+      storage.removeItem(key);
+    }
+
+    @Override
+    public void setItem(String key, String data) {
+      storage.setItem(key, data);
+    }
+  }
 }
@@ -19,6 +19,8 @@ package org.gwtproject.storage.client;
 import static elemental2.dom.DomGlobal.window;
 
 import elemental2.webstorage.WebStorageWindow;
+import java.util.Collection;
+import java.util.Map;
 import jsinterop.base.JsPropertyMap;
 
 /**
@@ -60,18 +62,73 @@ class StorageImplNonNativeEvents extends StorageImpl {
 
   @Override
   public void removeItem(String storage, String key) {
-    String oldValue = getItem(storage, key);
+    String oldValue = getStorageArea(storage).getItem(key);
     super.removeItem(storage, key);
     fireStorageEvent(key, oldValue, null, storage);
   }
 
   @Override
   public void setItem(String storage, String key, String data) {
-    String oldValue = getItem(storage, key);
-    super.setItem(storage, key, data);
+    StorageArea area = getStorageArea(storage);
+    String oldValue = area.getItem(key);
+    if (suppressWrite(storage, oldValue, data)) {
+      return;
+    }
+    area.setItem(key, data);
     fireStorageEvent(key, oldValue, data, storage);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The previous values are only read if a handler is registered or writes are deduplicated, and
+   * the events are fired once all items are written, or when the bulk write fails for those written
+   * so far.
+   */
+  @Override
+  public void setItems(String storage, Map<String, String> items) {
+    if (!hasStorageEventHandlers()) {
+      super.setItems(storage, items);
+      return;
+    }
+
+    Map<String, String> oldValues = readItems(storage, items.keySet());
+    if (isWriteDeduplication(storage)) {
+      items = withoutUnchanged(storage, items, oldValues);
+    }
+    try {
+      writeItems(storage, items);
+    } catch (StoragePartialWriteException e) {
+      for (String key : e.getWrittenKeys()) {
+        fireStorageEvent(key, oldValues.get(key), items.get(key), storage);
+      }
+      throw e;
+    }
+    for (Map.Entry<String, String> item : items.entrySet()) {
+      fireStorageEvent(item.getKey(), oldValues.get(item.getKey()), item.getValue(), storage);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The previous values are only read if a handler is registered, and the events are fired once
+   * all items are removed.
+   */
+  @Override
+  public void removeItems(String storage, Collection<String> keys) {
+    if (!hasStorageEventHandlers()) {
+      super.removeItems(storage, keys);
+      return;
+    }
+
+    Map<String, String> oldValues = readItems(storage, keys);
+    super.removeItems(storage, keys);
+    for (String key : keys) {
+      fireStorageEvent(key, oldValues.get(key), null, storage);
+    }
+  }
+
   @Override
   protected void addStorageEventHandler0() {
     // no-op
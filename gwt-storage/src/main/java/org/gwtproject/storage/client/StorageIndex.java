@@ -0,0 +1,243 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * A secondary index over the items of a {@link Storage} whose keys start with a prefix, mapping a
+ * value extracted from each item (e.g. a field of a JSON value) to the keys of the items.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The index is persisted in the Storage itself, with one item per indexed value listing the
+ * keys, so that {@link #lookup(String)} reads a single item and takes time proportional to the
+ * number of matches rather than to the size of the Storage. It is built once, when it is first
+ * created, then updated incrementally from the {@link StorageEvent}s of the writes made by this
+ * window and by other windows; updates are idempotent, so windows maintaining the same index do not
+ * corrupt it. Items written while no window maintained the index are only indexed by {@link
+ * #rebuild()}.
+ *
+ * <p>Lookups can be used as the candidates of a {@link StorageQuery}:
+ *
+ * <pre>
+ * storage.query().candidates(byStatus.lookup("pending")).valueFilter(...).list();
+ * </pre>
+ */
+public class StorageIndex {
+
+  /** Extracts the indexed value of an item. */
+  public interface Extractor {
+    /**
+     * Returns the value the item is indexed under.
+     *
+     * @param key the key of the item
+     * @param value the value of the item
+     * @return the indexed value, or <code>null</code> if the item is not indexed
+     */
+    String extract(String key, String value);
+  }
+
+  private static final char SEPARATOR = '\u001F';
+  // The value of the item marking the index as built
+  private static final String BUILT = "1";
+
+  private final Storage storage;
+  private final String name;
+  private final String keyPrefix;
+  private final Extractor extractor;
+  private final HandlerRegistration registration;
+  private final HandlerRegistration crossWindowRegistration;
+
+  /**
+   * Creates the index, building it if it is not yet stored.
+   *
+   * @param storage the storage holding the items and the index
+   * @param name the name of the index, prefixing the keys of its items; it must not start with a
+   *     non-empty <code>keyPrefix</code>
+   * @param keyPrefix the prefix of the keys of the indexed items, or an empty string or <code>null
+   *     </code> to index all the items but those of the index
+   * @param extractor extracts the indexed value of the items
+   * @throws IllegalArgumentException if the name starts with a non-empty key prefix
+   */
+  public StorageIndex(Storage storage, String name, String keyPrefix, Extractor extractor) {
+    assert storage != null : "storage cannot be null";
+    assert name != null : "name cannot be null";
+    if (keyPrefix == null) {
+      keyPrefix = "";
+    }
+    if (!keyPrefix.isEmpty() && name.startsWith(keyPrefix)) {
+      throw new IllegalArgumentException(
+          "the index name cannot start with the key prefix: " + name);
+    }
+    this.storage = storage;
+    this.name = name;
+    this.keyPrefix = keyPrefix;
+    this.extractor = extractor;
+    if (storage.getItem(name) == null) {
+      rebuild();
+    }
+    StorageEvent.Handler handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            if (event.getStorageArea() == StorageIndex.this.storage) {
+              update(event.getKey(), event.getOldValue(), event.getNewValue());
+            }
+          }
+        };
+    registration = Storage.addStorageEventHandler(handler);
+    crossWindowRegistration = storage.addCrossWindowEventHandler(handler);
+  }
+
+  /** Stops maintaining the index. The index must not be used afterwards. */
+  public void detach() {
+    registration.removeHandler();
+    crossWindowRegistration.removeHandler();
+  }
+
+  /** Returns the name of the index. */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the keys of the items indexed under the specified value.
+   *
+   * @param indexedValue the indexed value
+   * @return the keys, in indexing order
+   */
+  public Set<String> lookup(String indexedValue) {
+    return Collections.unmodifiableSet(readKeys(indexedValue));
+  }
+
+  /**
+   * Rebuilds the index from the items of the Storage, reading all of them.
+   *
+   * <p>Needed only if the indexed items were written while no window maintained the index, or if
+   * the extractor changed.
+   */
+  public void rebuild() {
+    Set<String> stale = new HashSet<String>();
+    Map<String, Set<String>> postings = new LinkedHashMap<String, Set<String>>();
+    int length = storage.getLength();
+    for (int i = 0; i < length; i++) {
+      String key = storage.key(i);
+      if (key == null || key.equals(name)) {
+        // null if items were removed meanwhile, e.g. by a handler of the storage events
+        continue;
+      } else if (isPostingKey(key)) {
+        stale.add(key);
+      } else if (key.startsWith(keyPrefix)) {
+        String indexedValue = extractor.extract(key, storage.getItem(key));
+        if (indexedValue != null) {
+          Set<String> keys = postings.get(indexedValue);
+          if (keys == null) {
+            keys = new LinkedHashSet<String>();
+            postings.put(indexedValue, keys);
+          }
+          keys.add(key);
+        }
+      }
+    }
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, Set<String>> posting : postings.entrySet()) {
+      String postingKey = postingKey(posting.getKey());
+      stale.remove(postingKey);
+      items.put(postingKey, encode(posting.getValue()));
+    }
+    items.put(name, BUILT);
+    storage.removeAll(stale);
+    storage.putAll(items);
+  }
+
+  /*
+   * Moves the key to the posting of its new indexed value
+   */
+  private void update(String key, String oldValue, String newValue) {
+    if (key == null) {
+      // the Storage was cleared, with the index: mark the empty index as built
+      if (storage.getItem(name) == null) {
+        storage.setItem(name, BUILT);
+      }
+      return;
+    }
+    if (!key.startsWith(keyPrefix) || key.equals(name) || isPostingKey(key)) {
+      return;
+    }
+    String oldIndexed = oldValue == null ? null : extractor.extract(key, oldValue);
+    String newIndexed = newValue == null ? null : extractor.extract(key, newValue);
+    if (oldIndexed != null && !oldIndexed.equals(newIndexed)) {
+      Set<String> keys = readKeys(oldIndexed);
+      if (keys.remove(key)) {
+        writeKeys(oldIndexed, keys);
+      }
+    }
+    if (newIndexed != null) {
+      Set<String> keys = readKeys(newIndexed);
+      if (keys.add(key)) {
+        writeKeys(newIndexed, keys);
+      }
+    }
+  }
+
+  private boolean isPostingKey(String key) {
+    return key.length() > name.length()
+        && key.charAt(name.length()) == SEPARATOR
+        && key.startsWith(name);
+  }
+
+  private String postingKey(String indexedValue) {
+    return name + SEPARATOR + indexedValue;
+  }
+
+  private Set<String> readKeys(String indexedValue) {
+    Set<String> keys = new LinkedHashSet<String>();
+    String posting = storage.getItem(postingKey(indexedValue));
+    if (posting != null) {
+      PositionalReader reader = new PositionalReader(posting);
+      reader.beginArray();
+      while (reader.hasNext()) {
+        keys.add(reader.readString());
+      }
+      reader.endArray();
+    }
+    return keys;
+  }
+
+  private void writeKeys(String indexedValue, Set<String> keys) {
+    if (keys.isEmpty()) {
+      storage.removeItem(postingKey(indexedValue));
+    } else {
+      storage.setItem(postingKey(indexedValue), encode(keys));
+    }
+  }
+
+  private static String encode(Set<String> keys) {
+    PositionalWriter writer = new PositionalWriter().beginArray();
+    for (String key : keys) {
+      writer.writeString(key);
+    }
+    return writer.endArray().toString();
+  }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.core.client.Scheduler;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * Records the changes made to a {@link Storage} in a persisted journal, numbered by sequence
+ * numbers, so that a consumer (e.g. a synchronization with a server) can ask for the changes made
+ * since the last sequence number it processed instead of comparing the whole Storage.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The journal records which keys were set or removed, and when the Storage was cleared, from
+ * the {@link StorageEvent}s of the writes made by this window; values are read from the Storage
+ * when the changes are processed. Changes are buffered and appended after the current event loop
+ * task (or on {@link #flush()}), in items of {@link #SEGMENT_SIZE} changes under the journal name,
+ * the <code>U+001F</code> separator and the segment index, plus a header item under the journal
+ * name; only the last segment is rewritten when changes are appended.
+ *
+ * <p>The journal is a ring bounded by its capacity: when it is full, changes superseded by a later
+ * change of the same key are folded away, then the oldest changes are dropped. A consumer which
+ * fell behind the dropped changes, as told by {@link #covers(int)}, must then compare the whole
+ * Storage again.
+ *
+ * <p>Windows sharing a Storage can each maintain the journal: the header is read again before
+ * appending, so that changes appended by another window are not overwritten.
+ */
+public class StorageJournal {
+
+  /** The kinds of changes. */
+  public enum Operation {
+    /** A value was set. */
+    SET,
+    /** A value was removed. */
+    REMOVE,
+    /** The Storage was cleared; the change has no key. */
+    CLEAR
+  }
+
+  /** A change recorded in the journal. */
+  public static final class Change {
+    private final int seq;
+    private final String key;
+    private final Operation operation;
+
+    Change(int seq, String key, Operation operation) {
+      this.seq = seq;
+      this.key = key;
+      this.operation = operation;
+    }
+
+    /** Returns the key which changed, or <code>null</code> if the Storage was cleared. */
+    public String getKey() {
+      return key;
+    }
+
+    /** Returns the kind of change. */
+    public Operation getOperation() {
+      return operation;
+    }
+
+    /** Returns the sequence number of the change. */
+    public int getSeq() {
+      return seq;
+    }
+
+    @Override
+    public String toString() {
+      return seq + ":" + operation + (key == null ? "" : " " + key);
+    }
+  }
+
+  /** The default maximum number of changes kept. */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /** The number of changes per journal item. */
+  public static final int SEGMENT_SIZE = 128;
+
+  private static final char SEPARATOR = '\u001F';
+  private static final Operation[] OPERATIONS = Operation.values();
+
+  private final Storage storage;
+  private final String name;
+  private final int capacity;
+  private final HandlerRegistration registration;
+  private final List<Change> changes = new ArrayList<Change>();
+  // changes awaiting a sequence number
+  private final List<Change> pending = new ArrayList<Change>();
+  // the sequence number up to which changes were dropped
+  private int baseSeq;
+  private int nextSeq;
+  // the header as last read or written, to detect appends by other windows
+  private String header;
+  // number of segments, and of leading segments unchanged since they were last written
+  private int segmentCount;
+  private int cleanSegments;
+  private boolean flushScheduled;
+
+  /**
+   * Creates a journal keeping up to {@link #DEFAULT_CAPACITY} changes.
+   *
+   * @param storage the storage whose changes are recorded, and which holds the journal
+   * @param name the name of the journal, prefixing its keys
+   */
+  public StorageJournal(Storage storage, String name) {
+    this(storage, name, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a journal, continuing the journal already stored under that name if any.
+   *
+   * @param storage the storage whose changes are recorded, and which holds the journal
+   * @param name the name of the journal, prefixing its keys
+   * @param capacity the maximum number of changes kept
+   */
+  public StorageJournal(Storage storage, String name, int capacity) {
+    assert storage != null : "storage cannot be null";
+    assert capacity > 0 : "capacity must be positive";
+    this.storage = storage;
+    this.name = name;
+    this.capacity = capacity;
+    load(storage.getItem(name));
+    registration =
+        Storage.addStorageEventHandler(
+            new StorageEvent.Handler() {
+              @Override
+              public void onStorageChange(StorageEvent event) {
+                if (event.getStorageArea() == StorageJournal.this.storage) {
+                  record(event.getKey(), event.getNewValue());
+                }
+              }
+            });
+  }
+
+  /**
+   * Returns <code>true</code> if the journal holds all the changes made after the specified
+   * sequence number.
+   *
+   * @param seq a sequence number returned by {@link #getLastSeq()} or {@link Change#getSeq()}
+   */
+  public boolean covers(int seq) {
+    flush();
+    return seq >= baseSeq;
+  }
+
+  /** Writes the buffered changes and stops recording changes. */
+  public void detach() {
+    flush();
+    registration.removeHandler();
+  }
+
+  /** Appends the buffered changes to the stored journal. */
+  public void flush() {
+    String stored = storage.getItem(name);
+    if (stored == null ? header != null : !stored.equals(header)) {
+      if (stored != null || pending.isEmpty() || pending.get(0).operation != Operation.CLEAR) {
+        // another window appended changes
+        load(stored);
+      } else {
+        // the journal was cleared with the Storage, and is rewritten from the clear on
+        cleanSegments = 0;
+      }
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    for (Change change : pending) {
+      changes.add(new Change(nextSeq++, change.key, change.operation));
+    }
+    pending.clear();
+    if (changes.size() > capacity) {
+      fold();
+      if (changes.size() > capacity) {
+        // drop a quarter of the journal at once, so that the rewrite is amortized
+        List<Change> dropped = changes.subList(0, changes.size() - capacity * 3 / 4);
+        baseSeq = dropped.get(dropped.size() - 1).seq;
+        dropped.clear();
+      }
+      cleanSegments = 0;
+    }
+    write();
+  }
+
+  /**
+   * Returns the changes made after the specified sequence number, folded so that each key appears
+   * once, with its last change; if the Storage was cleared, the changes start with the last clear.
+   *
+   * @param seq a sequence number returned by {@link #getLastSeq()} or {@link Change#getSeq()}, or
+   *     <code>0</code> for all the changes
+   * @return the changes, in sequence order
+   * @throws IllegalStateException if changes made after <code>seq</code> were dropped
+   */
+  public List<Change> getChangesSince(int seq) {
+    if (!covers(seq)) {
+      throw new IllegalStateException("changes since " + seq + " were dropped");
+    }
+    Change clear = null;
+    Map<String, Change> folded = new LinkedHashMap<String, Change>();
+    for (Change change : changes) {
+      if (change.seq <= seq) {
+        continue;
+      }
+      if (change.operation == Operation.CLEAR) {
+        clear = change;
+        folded.clear();
+      } else {
+        // moves the key after the keys changed before its last change
+        folded.remove(change.key);
+        folded.put(change.key, change);
+      }
+    }
+    List<Change> result = new ArrayList<Change>(folded.size() + 1);
+    if (clear != null) {
+      result.add(clear);
+    }
+    result.addAll(folded.values());
+    return result;
+  }
+
+  /** Returns the sequence number of the last change, or <code>0</code> if there is none. */
+  public int getLastSeq() {
+    flush();
+    return nextSeq - 1;
+  }
+
+  /*
+   * Buffers the change described by a storage event
+   */
+  private void record(String key, String newValue) {
+    if (key != null && (key.equals(name) || key.startsWith(name + SEPARATOR))) {
+      return;
+    }
+    Operation operation;
+    if (key == null) {
+      operation = Operation.CLEAR;
+      // the changes buffered before are superseded, and the stored journal is gone
+      pending.clear();
+    } else {
+      operation = newValue == null ? Operation.REMOVE : Operation.SET;
+    }
+    pending.add(new Change(0, key, operation));
+    scheduleFlush();
+  }
+
+  /*
+   * Keeps only the last change of each key, and nothing before the last clear
+   */
+  private void fold() {
+    Map<String, Change> last = new LinkedHashMap<String, Change>();
+    for (Change change : changes) {
+      if (change.operation == Operation.CLEAR) {
+        last.clear();
+      } else {
+        last.remove(change.key);
+      }
+      last.put(change.key, change);
+    }
+    changes.clear();
+    changes.addAll(last.values());
+  }
+
+  private void load(String stored) {
+    changes.clear();
+    header = stored;
+    if (stored == null) {
+      baseSeq = 0;
+      nextSeq = 1;
+      segmentCount = 0;
+      cleanSegments = 0;
+      return;
+    }
+    PositionalReader reader = new PositionalReader(stored);
+    reader.beginArray();
+    baseSeq = reader.readInt();
+    nextSeq = reader.readInt();
+    segmentCount = reader.readInt();
+    reader.endArray();
+    for (int i = 0; i < segmentCount; i++) {
+      String segment = storage.getItem(segmentKey(i));
+      if (segment == null) {
+        continue;
+      }
+      reader = new PositionalReader(segment);
+      reader.beginArray();
+      while (reader.hasNext()) {
+        int seq = reader.readInt();
+        String key = reader.readNull() ? null : reader.readString();
+        changes.add(new Change(seq, key, OPERATIONS[reader.readInt()]));
+      }
+      reader.endArray();
+    }
+    cleanSegments = segmentCount;
+  }
+
+  /*
+   * Writes the segments changed since they were last written, and the header
+   */
+  private void write() {
+    int count = (changes.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+    // the last clean segment may have been partially filled
+    int first = Math.max(0, Math.min(cleanSegments, count) - 1);
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    for (int i = first; i < count; i++) {
+      PositionalWriter writer = new PositionalWriter().beginArray();
+      int end = Math.min(changes.size(), (i + 1) * SEGMENT_SIZE);
+      for (int j = i * SEGMENT_SIZE; j < end; j++) {
+        Change change = changes.get(j);
+        writer.writeInt(change.seq);
+        if (change.key == null) {
+          writer.writeNull();
+        } else {
+          writer.writeString(change.key);
+        }
+        writer.writeInt(change.operation.ordinal());
+      }
+      items.put(segmentKey(i), writer.endArray().toString());
+    }
+    header =
+        new PositionalWriter()
+            .beginArray()
+            .writeInt(baseSeq)
+            .writeInt(nextSeq)
+            .writeInt(count)
+            .endArray()
+            .toString();
+    items.put(name, header);
+    List<String> removals = new ArrayList<String>();
+    for (int i = count; i < segmentCount; i++) {
+      removals.add(segmentKey(i));
+    }
+    storage.putAll(items);
+    if (!removals.isEmpty()) {
+      storage.removeAll(removals);
+    }
+    segmentCount = count;
+    cleanSegments = count;
+  }
+
+  private String segmentKey(int index) {
+    return name + SEPARATOR + index;
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                flushScheduled = false;
+                flush();
+              }
+            });
+  }
+}
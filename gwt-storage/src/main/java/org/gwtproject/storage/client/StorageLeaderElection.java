@@ -0,0 +1,303 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import elemental2.dom.Event;
+import elemental2.dom.EventListener;
+import elemental2.dom.PageTransitionEvent;
+import jsinterop.base.Js;
+import org.gwtproject.core.client.Scheduler;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * Elects one leader among the windows sharing a local {@link Storage}, so that background jobs
+ * (maintenance, synchronization...) run in a single window rather than in every open tab.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The leader holds a lease, an item under the election name holding its id and the time the
+ * lease expires, which it renews three times per lease duration. A window whose lease was
+ * overwritten steps down; a window finding no lease, or an expired one, claims it, and becomes the
+ * leader if its claim is still in place a short moment later, when the claims of concurrent windows
+ * have been written. The leader resigns when its page is hidden for good or when {@link #stop()} is
+ * called, removing the lease: the other windows are notified by the storage event and claim it
+ * right away, rather than after the lease expires. A page entering the back/forward cache resigns
+ * as well, but takes part in the election again once it is restored.
+ *
+ * <p>Browsers throttle the timers of background tabs, possibly beyond the lease duration, so two
+ * windows may briefly both consider themselves the leader; jobs should check {@link #isLeader()}
+ * before each unit of work.
+ */
+public class StorageLeaderElection {
+
+  /** Receives the changes of leadership of this window. */
+  public interface Listener {
+    /**
+     * Called when this window becomes or stops being the leader.
+     *
+     * @param leader <code>true</code> if this window is now the leader
+     */
+    void onLeadershipChange(boolean leader);
+  }
+
+  /** The default duration of a lease, in milliseconds. */
+  public static final int DEFAULT_LEASE_MILLIS = 5000;
+
+  private final Storage storage;
+  private final String name;
+  private final int leaseMillis;
+  private final String id;
+  private Listener listener;
+  private HandlerRegistration registration;
+  private HandlerRegistration crossWindowRegistration;
+  private HandlerRegistration pageHideRegistration;
+  private HandlerRegistration pageShowRegistration;
+  private Object token;
+  private boolean running;
+  private boolean suspended;
+  private boolean leader;
+  private boolean claimScheduled;
+
+  /**
+   * Creates an election with leases of {@link #DEFAULT_LEASE_MILLIS}.
+   *
+   * @param storage the local storage shared by the windows
+   * @param name the name of the election, which is the key of the lease
+   */
+  public StorageLeaderElection(Storage storage, String name) {
+    this(storage, name, DEFAULT_LEASE_MILLIS);
+  }
+
+  /**
+   * Creates an election.
+   *
+   * @param storage the local storage shared by the windows
+   * @param name the name of the election, which is the key of the lease
+   * @param leaseMillis the duration of a lease, after which a leader which did not renew it is
+   *     replaced
+   */
+  public StorageLeaderElection(Storage storage, String name, int leaseMillis) {
+    assert storage != null : "storage cannot be null";
+    assert leaseMillis >= 30 : "leaseMillis is too short";
+    this.storage = storage;
+    this.name = name;
+    this.leaseMillis = leaseMillis;
+    this.id =
+        Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+  }
+
+  /** Returns the id of this window in the election. */
+  public String getId() {
+    return id;
+  }
+
+  /** Returns <code>true</code> if this window is the leader. */
+  public boolean isLeader() {
+    return leader;
+  }
+
+  /**
+   * Takes part in the election, claiming the lease if it is free, and renewing it periodically.
+   *
+   * @param listener the listener notified when this window becomes or stops being the leader
+   */
+  public void start(Listener listener) {
+    assert !running : "the election is already started";
+    this.listener = listener;
+    running = true;
+    suspended = false;
+    final Object startToken = new Object();
+    token = startToken;
+    StorageEvent.Handler handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            if (event.getStorageArea() == storage
+                && (event.getKey() == null || event.getKey().equals(name))
+                && !isOwnLease(event.getNewValue())) {
+              heartbeat();
+            }
+          }
+        };
+    registration = Storage.addStorageEventHandler(handler);
+    crossWindowRegistration = storage.addCrossWindowEventHandler(handler);
+    pageHideRegistration =
+        storage.addWindowEventListener(
+            "pagehide",
+            new EventListener() {
+              @Override
+              public void handleEvent(Event event) {
+                pageHidden(Js.<PageTransitionEvent>uncheckedCast(event).persisted);
+              }
+            });
+    pageShowRegistration =
+        storage.addWindowEventListener(
+            "pageshow",
+            new EventListener() {
+              @Override
+              public void handleEvent(Event event) {
+                pageShown();
+              }
+            });
+    Scheduler.get()
+        .scheduleFixedPeriod(
+            new Scheduler.RepeatingCommand() {
+              @Override
+              public boolean execute() {
+                // a command of an earlier start, stopped since, ends rather than renewing twice
+                if (token != startToken) {
+                  return false;
+                }
+                heartbeat();
+                return true;
+              }
+            },
+            leaseMillis / 3);
+    heartbeat();
+  }
+
+  /** Leaves the election, resigning the leadership so that another window takes it over. */
+  public void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    token = null;
+    registration.removeHandler();
+    crossWindowRegistration.removeHandler();
+    pageHideRegistration.removeHandler();
+    pageShowRegistration.removeHandler();
+    resign();
+  }
+
+  /*
+   * Leaves the election when the page is unloaded, or only resigns while it is in the back/forward
+   * cache, from which it may be restored
+   */
+  void pageHidden(boolean persisted) {
+    if (!persisted) {
+      stop();
+    } else if (running) {
+      suspended = true;
+      resign();
+    }
+  }
+
+  /*
+   * Takes part in the election again when the page is restored from the back/forward cache
+   */
+  void pageShown() {
+    if (suspended) {
+      suspended = false;
+      heartbeat();
+    }
+  }
+
+  /*
+   * Renews the lease of the leader, claims a free lease, or steps down if another window holds it
+   */
+  void heartbeat() {
+    if (!running || suspended) {
+      return;
+    }
+    String lease = storage.getItem(name);
+    long now = now();
+    if (isOwnLease(lease)) {
+      // renewed by the leader, or a claim which was not overwritten
+      writeLease(now);
+      setLeader(true);
+    } else if (lease == null || readExpiry(lease) <= now) {
+      writeLease(now);
+      setLeader(false);
+      scheduleClaimCheck();
+    } else {
+      setLeader(false);
+    }
+  }
+
+  /*
+   * Returns the current time, shared by the windows
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  private void resign() {
+    if (isOwnLease(storage.getItem(name))) {
+      storage.removeItem(name);
+    }
+    setLeader(false);
+  }
+
+  private boolean isOwnLease(String lease) {
+    if (lease == null) {
+      return false;
+    }
+    PositionalReader reader = new PositionalReader(lease);
+    reader.beginArray();
+    return id.equals(reader.readString());
+  }
+
+  private long readExpiry(String lease) {
+    PositionalReader reader = new PositionalReader(lease);
+    reader.beginArray();
+    reader.skipValue();
+    return reader.readLong();
+  }
+
+  private void writeLease(long now) {
+    storage.setItem(
+        name,
+        new PositionalWriter()
+            .beginArray()
+            .writeString(id)
+            .writeLong(now + leaseMillis)
+            .endArray()
+            .toString());
+  }
+
+  /*
+   * Checks the claim once concurrent claims were written, instead of at the next renewal
+   */
+  private void scheduleClaimCheck() {
+    if (claimScheduled) {
+      return;
+    }
+    claimScheduled = true;
+    Scheduler.get()
+        .scheduleFixedDelay(
+            new Scheduler.RepeatingCommand() {
+              @Override
+              public boolean execute() {
+                claimScheduled = false;
+                heartbeat();
+                return false;
+              }
+            },
+            Math.min(100, leaseMillis / 10));
+  }
+
+  private void setLeader(boolean leader) {
+    if (this.leader != leader) {
+      this.leader = leader;
+      if (listener != null) {
+        listener.onLeadershipChange(leader);
+      }
+    }
+  }
+}
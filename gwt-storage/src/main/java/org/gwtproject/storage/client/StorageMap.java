@@ -16,12 +16,21 @@
 
 package org.gwtproject.storage.client;
 
+import java.util.AbstractCollection;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Exposes the local/session {@link Storage} as a standard {@link Map Map&lt;String, String&gt;}.
@@ -168,6 +177,208 @@ public class StorageMap extends AbstractMap<String, String> {
     public int size() {
       return StorageMap.this.size();
     }
+
+    @Override
+    public Spliterator<Map.Entry<String, String>> spliterator() {
+      return new StorageSpliterator<Map.Entry<String, String>>(snapshotKeys()) {
+        @Override
+        Map.Entry<String, String> get(String key) {
+          String value = storage.getItem(key);
+          if (value == null) {
+            return null;
+          }
+          return new SimpleEntry<String, String>(key, value) {
+            @Override
+            public String setValue(String value) {
+              put(getKey(), value);
+              return super.setValue(value);
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /*
+   * Represents a Set over all Storage keys
+   */
+  private class StorageKeySet extends AbstractSet<String> {
+    @Override
+    public void clear() {
+      StorageMap.this.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o != null && containsKey(o);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      final Iterator<Map.Entry<String, String>> it = new StorageEntryIterator();
+      return new Iterator<String>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public String next() {
+          return it.next().getKey();
+        }
+
+        @Override
+        public void remove() {
+          it.remove();
+        }
+      };
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return o != null && StorageMap.this.remove(o) != null;
+    }
+
+    @Override
+    public int size() {
+      return StorageMap.this.size();
+    }
+
+    @Override
+    public Spliterator<String> spliterator() {
+      return new StorageSpliterator<String>(snapshotKeys()) {
+        @Override
+        String get(String key) {
+          return key;
+        }
+      };
+    }
+  }
+
+  /*
+   * Represents a Collection over all Storage values
+   */
+  private class StorageValues extends AbstractCollection<String> {
+    @Override
+    public void clear() {
+      StorageMap.this.clear();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o != null && containsValue(o);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      final Iterator<Map.Entry<String, String>> it = new StorageEntryIterator();
+      return new Iterator<String>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public String next() {
+          return it.next().getValue();
+        }
+
+        @Override
+        public void remove() {
+          it.remove();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return StorageMap.this.size();
+    }
+
+    @Override
+    public Spliterator<String> spliterator() {
+      return new StorageSpliterator<String>(snapshotKeys()) {
+        @Override
+        String get(String key) {
+          return storage.getItem(key);
+        }
+      };
+    }
+  }
+
+  /*
+   * Splits a snapshot of the keys by index range; each item is read once, when it is traversed,
+   * and skipped if it was removed since the snapshot, so the size is only an estimate
+   */
+  private abstract static class StorageSpliterator<T> implements Spliterator<T> {
+    private final String[] keys;
+    private int index;
+    private final int fence;
+
+    StorageSpliterator(String[] keys) {
+      this(keys, 0, keys.length);
+    }
+
+    private StorageSpliterator(String[] keys, int index, int fence) {
+      this.keys = keys;
+      this.index = index;
+      this.fence = fence;
+    }
+
+    // returns null if the item was removed
+    abstract T get(String key);
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      while (index < fence) {
+        String key = keys[index++];
+        T item = key == null ? null : get(key);
+        if (item != null) {
+          action.accept(item);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      for (; index < fence; index++) {
+        String key = keys[index];
+        T item = key == null ? null : get(key);
+        if (item != null) {
+          action.accept(item);
+        }
+      }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if (mid <= index) {
+        return null;
+      }
+      final StorageSpliterator<T> outer = this;
+      Spliterator<T> prefix =
+          new StorageSpliterator<T>(keys, index, mid) {
+            @Override
+            T get(String key) {
+              return outer.get(key);
+            }
+          };
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
   }
 
   private final Storage storage;
@@ -193,6 +404,67 @@ public class StorageMap extends AbstractMap<String, String> {
     storage.clear();
   }
 
+  /**
+   * Computes a new value for the specified key from its current one, reading the Storage once and
+   * writing it at most once (not at all if the value is unchanged).
+   *
+   * @param key the key identifying the value
+   * @param remappingFunction computes the new value, or <code>null</code> to remove the item
+   * @return the new value, or <code>null</code> if there is none
+   */
+  @Override
+  public String compute(
+      String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+    if (key == null || remappingFunction == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    return update(key, old, remappingFunction.apply(key, old));
+  }
+
+  /**
+   * Computes and stores a value for the specified key if it has none, reading the Storage once.
+   *
+   * @param key the key identifying the value
+   * @param mappingFunction computes the value, or <code>null</code> to store nothing
+   * @return the current or computed value, or <code>null</code> if there is none
+   */
+  @Override
+  public String computeIfAbsent(
+      String key, Function<? super String, ? extends String> mappingFunction) {
+    if (key == null || mappingFunction == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    if (old != null) {
+      return old;
+    }
+    return update(key, null, mappingFunction.apply(key));
+  }
+
+  /**
+   * Computes a new value for the specified key if it has one, reading the Storage once.
+   *
+   * @param key the key identifying the value
+   * @param remappingFunction computes the new value, or <code>null</code> to remove the item
+   * @return the new value, or <code>null</code> if there is none
+   */
+  @Override
+  public String computeIfPresent(
+      String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+    if (key == null || remappingFunction == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    if (old == null) {
+      return null;
+    }
+    return update(key, old, remappingFunction.apply(key, old));
+  }
+
   /**
    * Returns <code>true</code> if the Storage contains the specified key, <code>
    * false</code> otherwise.
@@ -221,7 +493,15 @@ public class StorageMap extends AbstractMap<String, String> {
     return false;
   }
 
-  /** Returns a Set containing all entries of the Storage. */
+  /**
+   * Returns a Set containing all entries of the Storage.
+   *
+   * <p>The spliterators of this Set, {@link #keySet()} and {@link #values()} are split by index
+   * range over a snapshot of the keys taken when they are created, so that streams read each key
+   * and value once and parallel streams can split the work evenly. Items removed since the snapshot
+   * are skipped, so the size of the snapshot is only an estimate and the spliterators do not report
+   * {@link java.util.Spliterator#SIZED}.
+   */
   @Override
   public Set<Map.Entry<String, String>> entrySet() {
     return new StorageEntrySet();
@@ -242,6 +522,48 @@ public class StorageMap extends AbstractMap<String, String> {
     return storage.getItem(key.toString());
   }
 
+  /**
+   * Returns the value associated with the specified key in the Storage, or the given default value
+   * if there is none, reading the Storage once.
+   *
+   * @param key the key identifying the value
+   * @param defaultValue the value to return if the key is not present
+   */
+  @Override
+  public String getOrDefault(Object key, String defaultValue) {
+    String value = get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  /**
+   * Stores the given value if the specified key has none, or the value computed from both values
+   * otherwise, reading the Storage once and writing it at most once.
+   *
+   * @param key the key identifying the value
+   * @param value the value to store or merge (not <code>null</code>)
+   * @param remappingFunction merges the current and the given values, or returns <code>null</code>
+   *     to remove the item
+   * @return the new value, or <code>null</code> if there is none
+   */
+  @Override
+  public String merge(
+      String key,
+      String value,
+      BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+    if (key == null || value == null || remappingFunction == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    return update(key, old, old == null ? value : remappingFunction.apply(old, value));
+  }
+
+  /** Returns a Set containing all keys of the Storage. */
+  @Override
+  public Set<String> keySet() {
+    return new StorageKeySet();
+  }
+
   /**
    * Adds (or overwrites) a new key/value pair in the Storage.
    *
@@ -260,6 +582,48 @@ public class StorageMap extends AbstractMap<String, String> {
     return old;
   }
 
+  /**
+   * Adds (or overwrites) all key/value pairs of the given map in the Storage.
+   *
+   * <p>Unlike repeated {@link #put(String, String)} calls, previous values are only read if a
+   * storage event handler is registered.
+   *
+   * @param map the key/value pairs to add (no <code>null</code> keys or values)
+   * @throws StoragePartialWriteException if an item could not be written
+   * @see Storage#putAll(Map)
+   */
+  @Override
+  public void putAll(Map<? extends String, ? extends String> map) {
+    Map<String, String> items = new LinkedHashMap<String, String>();
+    for (Map.Entry<? extends String, ? extends String> entry : map.entrySet()) {
+      if (entry.getKey() == null || entry.getValue() == null) {
+        throw new NullPointerException();
+      }
+      items.put(entry.getKey(), entry.getValue());
+    }
+    storage.putAll(items);
+  }
+
+  /**
+   * Stores the value if the specified key has none, reading the Storage once.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param value the value associated with the key (not <code>null</code>)
+   * @return the current value, or <code>null</code> if the value was stored
+   */
+  @Override
+  public String putIfAbsent(String key, String value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    if (old == null) {
+      storage.setItem(key, value);
+    }
+    return old;
+  }
+
   /**
    * Removes the key/value pair from the Storage.
    *
@@ -280,6 +644,113 @@ public class StorageMap extends AbstractMap<String, String> {
     return old;
   }
 
+  /**
+   * Removes the key/value pair from the Storage if the key is associated with the given value.
+   *
+   * @param key the key identifying the item to remove
+   * @param value the expected value
+   * @return <code>true</code> if the item was removed
+   */
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+
+    String k = key.toString();
+    String old = storage.getItem(k);
+    if (old == null || !old.equals(value)) {
+      return false;
+    }
+    storage.removeItem(k);
+    return true;
+  }
+
+  /**
+   * Removes the key/value pairs of all given keys from the Storage.
+   *
+   * @param keys the keys identifying the items to remove
+   * @see Storage#removeAll(Collection)
+   */
+  public void removeAll(Collection<?> keys) {
+    List<String> items = new ArrayList<String>(keys.size());
+    for (Object key : keys) {
+      if (key == null) {
+        throw new NullPointerException();
+      }
+      items.add(key.toString());
+    }
+    storage.removeAll(items);
+  }
+
+  /**
+   * Replaces the value of the specified key, if it has one.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param value the new value (not <code>null</code>)
+   * @return the previous value, or <code>null</code> if nothing was replaced
+   */
+  @Override
+  public String replace(String key, String value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    if (old != null) {
+      storage.setItem(key, value);
+    }
+    return old;
+  }
+
+  /**
+   * Replaces the value of the specified key, if it is the expected one.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param oldValue the expected value
+   * @param newValue the new value (not <code>null</code>)
+   * @return <code>true</code> if the value was replaced
+   */
+  @Override
+  public boolean replace(String key, String oldValue, String newValue) {
+    if (key == null || newValue == null) {
+      throw new NullPointerException();
+    }
+
+    String old = storage.getItem(key);
+    if (old == null || !old.equals(oldValue)) {
+      return false;
+    }
+    storage.setItem(key, newValue);
+    return true;
+  }
+
+  /**
+   * Replaces each value with the result of the given function, reading each item once and writing
+   * only the values that changed.
+   *
+   * @param function computes the new value of an item (not <code>null</code>)
+   */
+  @Override
+  public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+    if (function == null) {
+      throw new NullPointerException();
+    }
+
+    int s = size();
+    for (int i = 0; i < s; i++) {
+      String key = storage.key(i);
+      String old = storage.getItem(key);
+      String value = function.apply(key, old);
+      if (value == null) {
+        throw new NullPointerException();
+      }
+      if (!value.equals(old)) {
+        storage.setItem(key, value);
+      }
+    }
+  }
+
   /**
    * Returns the number of items in the Storage.
    *
@@ -290,4 +761,32 @@ public class StorageMap extends AbstractMap<String, String> {
   public int size() {
     return storage.getLength();
   }
+
+  /** Returns a Collection containing all values of the Storage. */
+  @Override
+  public Collection<String> values() {
+    return new StorageValues();
+  }
+
+  private String[] snapshotKeys() {
+    String[] keys = new String[size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = storage.key(i);
+    }
+    return keys;
+  }
+
+  /*
+   * Stores the new value, or removes the item if it is null, unless it is unchanged
+   */
+  private String update(String key, String old, String value) {
+    if (value == null) {
+      if (old != null) {
+        storage.removeItem(key);
+      }
+    } else if (!value.equals(old)) {
+      storage.setItem(key, value);
+    }
+    return value;
+  }
 }
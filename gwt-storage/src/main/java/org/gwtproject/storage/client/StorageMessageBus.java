@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gwtproject.core.client.Scheduler;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * Sends messages between the windows sharing a local {@link Storage}, on named topics.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The messages published during an event loop task are sent together after it (or on {@link
+ * #flush()}): they are written in a single item, under the bus name, the <code>U+001F</code>
+ * separator and the id of the sending bus, which is removed right away. The receivers read the
+ * messages from the new value carried by the {@link StorageEvent}, so the item only holds quota
+ * while it is written and is never left behind, even if the sending window closes.
+ *
+ * <p>Messages are delivered to the subscribers of other windows, and of the other buses of the same
+ * name in this window; a bus never receives its own messages. Delivery is best effort: messages
+ * sent while a window is not listening are not kept.
+ */
+public class StorageMessageBus {
+
+  /** Receives the messages of a topic. */
+  public interface Subscriber {
+    /**
+     * Called when a message is received.
+     *
+     * @param topic the topic of the message
+     * @param message the message
+     */
+    void onMessage(String topic, String message);
+  }
+
+  private static final char SEPARATOR = '\u001F';
+
+  private final Storage storage;
+  private final String name;
+  private final String id;
+  private final Map<String, List<Subscriber>> subscribers = new HashMap<String, List<Subscriber>>();
+  // topic and message of each message awaiting its write
+  private final List<String> pending = new ArrayList<String>();
+  private final HandlerRegistration registration;
+  private final HandlerRegistration crossWindowRegistration;
+  private boolean flushScheduled;
+
+  /**
+   * Creates a bus and starts receiving messages.
+   *
+   * @param storage the local storage shared by the windows
+   * @param name the name of the bus, prefixing the keys of its items
+   */
+  public StorageMessageBus(Storage storage, String name) {
+    assert storage != null : "storage cannot be null";
+    this.storage = storage;
+    this.name = name;
+    this.id =
+        Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString((int) (Math.random() * Integer.MAX_VALUE), 36);
+    StorageEvent.Handler handler =
+        new StorageEvent.Handler() {
+          @Override
+          public void onStorageChange(StorageEvent event) {
+            if (event.getStorageArea() == StorageMessageBus.this.storage) {
+              receive(event.getKey(), event.getNewValue());
+            }
+          }
+        };
+    registration = Storage.addStorageEventHandler(handler);
+    crossWindowRegistration = storage.addCrossWindowEventHandler(handler);
+  }
+
+  /** Sends the pending messages, and stops receiving messages. */
+  public void detach() {
+    flush();
+    registration.removeHandler();
+    crossWindowRegistration.removeHandler();
+  }
+
+  /** Sends the messages published since the last write, in a single write. */
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    PositionalWriter writer = new PositionalWriter().beginArray().writeString(id);
+    for (String value : pending) {
+      writer.writeString(value);
+    }
+    pending.clear();
+    String key = name + SEPARATOR + id;
+    storage.setItem(key, writer.endArray().toString());
+    storage.removeItem(key);
+  }
+
+  /**
+   * Publishes a message, sent with the other messages published during the current event loop
+   * task.
+   *
+   * @param topic the topic of the message
+   * @param message the message
+   */
+  public void publish(String topic, String message) {
+    pending.add(topic);
+    pending.add(message);
+    scheduleFlush();
+  }
+
+  /**
+   * Subscribes to the messages of a topic sent by other buses.
+   *
+   * @param topic the topic
+   * @param subscriber the subscriber
+   * @return {@link HandlerRegistration} used to unsubscribe
+   */
+  public HandlerRegistration subscribe(final String topic, final Subscriber subscriber) {
+    List<Subscriber> list = subscribers.get(topic);
+    if (list == null) {
+      list = new ArrayList<Subscriber>();
+      subscribers.put(topic, list);
+    }
+    list.add(subscriber);
+    return new HandlerRegistration() {
+      @Override
+      public void removeHandler() {
+        List<Subscriber> list = subscribers.get(topic);
+        if (list != null && list.remove(subscriber) && list.isEmpty()) {
+          subscribers.remove(topic);
+        }
+      }
+    };
+  }
+
+  /*
+   * Delivers the messages of a write of another bus
+   */
+  private void receive(String key, String value) {
+    // removals and clears carry no message
+    if (value == null || !key.startsWith(name + SEPARATOR) || subscribers.isEmpty()) {
+      return;
+    }
+    PositionalReader reader = new PositionalReader(value);
+    reader.beginArray();
+    if (id.equals(reader.readString())) {
+      return;
+    }
+    while (reader.hasNext()) {
+      String topic = reader.readString();
+      String message = reader.readString();
+      List<Subscriber> list = subscribers.get(topic);
+      if (list != null) {
+        for (Subscriber subscriber : new ArrayList<Subscriber>(list)) {
+          subscriber.onMessage(topic, message);
+        }
+      }
+    }
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled) {
+      return;
+    }
+    flushScheduled = true;
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                flushScheduled = false;
+                flush();
+              }
+            });
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects operation counts, transferred bytes and latencies of all {@link Storage} operations, and
+ * the time spent in each {@link StorageEvent.Handler}.
+ *
+ * <p>Instrumentation is disabled by default and controlled at compile time by the <code>
+ * gwt.storage.metrics</code> property (a configuration property in GWT2, a define in J2CL, a system
+ * property on the JVM). When disabled, the instrumentation is compiled out and {@link #snapshot()}
+ * returns empty metrics.
+ *
+ * <p>Operations are counted as requested through the {@link Storage} API, each item of a bulk
+ * operation counting as one call with an equal share of its latency; the reads made internally,
+ * e.g. of the previous value used to fire the storage event, are not counted. Latencies are those
+ * seen by the caller, including the dispatch of the storage events fired by this window.
+ */
+public final class StorageMetrics {
+
+  static final boolean ENABLED = "true".equals(System.getProperty("gwt.storage.metrics", "false"));
+
+  /** The primitive operations of the Web Storage API. */
+  public enum Operation {
+    GET_ITEM,
+    SET_ITEM,
+    REMOVE_ITEM,
+    KEY,
+    LENGTH,
+    CLEAR
+  }
+
+  private static final Operation[] OPERATIONS = Operation.values();
+
+  private static final long[] counts = new long[OPERATIONS.length];
+  private static final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+  private static final Map<String, LatencyHistogram> dispatchLatencies =
+      new LinkedHashMap<String, LatencyHistogram>();
+  private static long bytesRead;
+  private static long bytesWritten;
+
+  static {
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new LatencyHistogram();
+    }
+  }
+
+  private StorageMetrics() {}
+
+  /** Returns <code>true</code> if the instrumentation was compiled in. */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /** Returns an immutable copy of the metrics collected so far. */
+  public static Snapshot snapshot() {
+    return new Snapshot();
+  }
+
+  /** Discards all metrics collected so far. */
+  public static void reset() {
+    for (int i = 0; i < OPERATIONS.length; i++) {
+      counts[i] = 0;
+      latencies[i].reset();
+    }
+    dispatchLatencies.clear();
+    bytesRead = 0;
+    bytesWritten = 0;
+  }
+
+  static void record(Operation operation, double startMillis) {
+    int i = operation.ordinal();
+    counts[i]++;
+    latencies[i].record((StorageClock.now() - startMillis) * 1000);
+  }
+
+  static void record(Operation operation, double startMillis, int calls) {
+    if (calls == 0) {
+      return;
+    }
+    int i = operation.ordinal();
+    counts[i] += calls;
+    double micros = (StorageClock.now() - startMillis) * 1000 / calls;
+    for (int call = 0; call < calls; call++) {
+      latencies[i].record(micros);
+    }
+  }
+
+  static void recordRead(String value) {
+    if (value != null) {
+      bytesRead += 2L * value.length();
+    }
+  }
+
+  static void recordWritten(String key, String data) {
+    bytesWritten += 2L * key.length() + (data == null ? 0 : 2L * data.length());
+  }
+
+  static void recordDispatch(StorageEvent.Handler handler, double startMillis) {
+    String name = handler.getClass().getName();
+    LatencyHistogram histogram = dispatchLatencies.get(name);
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      dispatchLatencies.put(name, histogram);
+    }
+    histogram.record((StorageClock.now() - startMillis) * 1000);
+  }
+
+  /** An immutable copy of the collected metrics. */
+  public static final class Snapshot {
+    private final long[] counts = StorageMetrics.counts.clone();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final Map<String, LatencyHistogram> dispatchLatencies =
+        new LinkedHashMap<String, LatencyHistogram>();
+    private final long bytesRead = StorageMetrics.bytesRead;
+    private final long bytesWritten = StorageMetrics.bytesWritten;
+
+    private Snapshot() {
+      for (int i = 0; i < latencies.length; i++) {
+        latencies[i] = StorageMetrics.latencies[i].copy();
+      }
+      for (Map.Entry<String, LatencyHistogram> entry :
+          StorageMetrics.dispatchLatencies.entrySet()) {
+        dispatchLatencies.put(entry.getKey(), entry.getValue().copy());
+      }
+    }
+
+    /** Returns the number of calls of the given operation. */
+    public long getCount(Operation operation) {
+      return counts[operation.ordinal()];
+    }
+
+    /** Returns the latencies of the given operation. */
+    public LatencyHistogram getLatency(Operation operation) {
+      return latencies[operation.ordinal()].copy();
+    }
+
+    /** Returns the number of bytes (two per UTF-16 code unit) of the keys and values read. */
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    /** Returns the number of bytes (two per UTF-16 code unit) of the keys and values written. */
+    public long getBytesWritten() {
+      return bytesWritten;
+    }
+
+    /** Returns the time spent in event handlers, by handler class name. */
+    public Map<String, LatencyHistogram> getDispatchLatencies() {
+      return Collections.unmodifiableMap(dispatchLatencies);
+    }
+
+    /** Returns these metrics as a JSON object, with all latencies in microseconds. */
+    public String toJson() {
+      StringBuilder json = new StringBuilder("{\"enabled\":").append(ENABLED);
+      json.append(",\"bytesRead\":").append(bytesRead);
+      json.append(",\"bytesWritten\":").append(bytesWritten);
+      json.append(",\"operations\":{");
+      for (int i = 0; i < OPERATIONS.length; i++) {
+        if (i > 0) {
+          json.append(',');
+        }
+        json.append('"').append(OPERATIONS[i].name()).append("\":{\"count\":").append(counts[i]);
+        json.append(",\"latency\":").append(latencies[i].toJson()).append('}');
+      }
+      json.append("},\"handlers\":{");
+      boolean first = true;
+      for (Map.Entry<String, LatencyHistogram> entry : dispatchLatencies.entrySet()) {
+        if (!first) {
+          json.append(',');
+        }
+        first = false;
+        json.append('"').append(entry.getKey()).append("\":").append(entry.getValue().toJson());
+      }
+      return json.append("}}").toString();
+    }
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Exposes the items of a {@link Storage} whose keys start with a prefix as a {@link Map
+ * Map&lt;String, T&gt;}, storing the values with a {@link StorageCodec}, usually generated for a
+ * {@link Storable} class.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>Values are stored under the map name, the <code>U+001F</code> separator and their key, so the
+ * map only sees its own items and ignores the other items of the Storage. Values are decoded on
+ * every read, so changes to a returned value are only stored by putting it again. {@link #size()}
+ * and the iteration enumerate the keys of the Storage; the iteration reads the values in pages, as
+ * {@link Storage#scan(String, int, String)} does.
+ *
+ * @param <T> the type of the values
+ */
+public class StorageObjectMap<T> extends AbstractMap<String, T> {
+
+  private static final char SEPARATOR = '\u001F';
+  // Items read per page by the iteration
+  private static final int PAGE_SIZE = 100;
+
+  private class ObjectEntry extends SimpleEntry<String, T> {
+    ObjectEntry(String key, T value) {
+      super(key, value);
+    }
+
+    @Override
+    public T setValue(T value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+
+  /*
+   * Iterates over the items of the map, sorted by key, a page at a time
+   */
+  private class EntryIterator implements Iterator<Map.Entry<String, T>> {
+    private StoragePage page = storage.scan(null, PAGE_SIZE, prefix);
+    private Iterator<Map.Entry<String, String>> items = page.getItems().entrySet().iterator();
+    private String last;
+
+    @Override
+    public boolean hasNext() {
+      while (!items.hasNext() && page.hasMore()) {
+        page = storage.scan(page.getCursor(), PAGE_SIZE, prefix);
+        items = page.getItems().entrySet().iterator();
+      }
+      return items.hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, T> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<String, String> item = items.next();
+      last = item.getKey();
+      return new ObjectEntry(last.substring(prefix.length()), codec.decode(item.getValue()));
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      storage.removeItem(last);
+      last = null;
+    }
+  }
+
+  private final Storage storage;
+  private final String prefix;
+  private final StorageCodec<T> codec;
+
+  /**
+   * Creates the Map of the specified name.
+   *
+   * @param storage a local/session Storage instance
+   * @param name the name of the map, prefixing the keys of its items
+   * @param codec the codec of the values, e.g. <code>Foo_StorageCodec.INSTANCE</code>
+   */
+  public StorageObjectMap(Storage storage, String name, StorageCodec<T> codec) {
+    assert storage != null : "storage cannot be null";
+    assert name != null && !name.isEmpty() : "name cannot be empty";
+    assert codec != null : "codec cannot be null";
+    this.storage = storage;
+    this.prefix = name + SEPARATOR;
+    this.codec = codec;
+  }
+
+  /** Returns the codec used to store the values. */
+  public StorageCodec<T> getCodec() {
+    return codec;
+  }
+
+  /** Removes all items of the map, with a single bulk removal. */
+  @Override
+  public void clear() {
+    storage.removeAll(itemKeys());
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    return storage.getItem(prefix + key) != null;
+  }
+
+  /** Returns a Set containing all entries of the map, decoding each value once. */
+  @Override
+  public Set<Map.Entry<String, T>> entrySet() {
+    return new AbstractSet<Map.Entry<String, T>>() {
+      @Override
+      public Iterator<Map.Entry<String, T>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return StorageObjectMap.this.size();
+      }
+
+      @Override
+      public void clear() {
+        StorageObjectMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Returns the decoded value associated with the specified key.
+   *
+   * @param key the key identifying the value
+   * @throws IllegalArgumentException if the stored value cannot be decoded
+   */
+  @Override
+  public T get(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    String encoded = storage.getItem(prefix + key);
+    return encoded == null ? null : codec.decode(encoded);
+  }
+
+  /**
+   * Encodes and stores the value under the key.
+   *
+   * @param key the key identifying the value (not <code>null</code>)
+   * @param value the value associated with the key (not <code>null</code>)
+   * @return the previous value, decoded
+   */
+  @Override
+  public T put(String key, T value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    String old = storage.getItem(prefix + key);
+    storage.setItem(prefix + key, codec.encode(value));
+    return old == null ? null : codec.decode(old);
+  }
+
+  /**
+   * Encodes and stores all values of the given map with a single bulk write.
+   *
+   * @see Storage#putAll(Map)
+   */
+  @Override
+  public void putAll(Map<? extends String, ? extends T> values) {
+    Map<String, String> encoded = new LinkedHashMap<String, String>();
+    for (Map.Entry<? extends String, ? extends T> entry : values.entrySet()) {
+      if (entry.getKey() == null || entry.getValue() == null) {
+        throw new NullPointerException();
+      }
+      encoded.put(prefix + entry.getKey(), codec.encode(entry.getValue()));
+    }
+    storage.putAll(encoded);
+  }
+
+  @Override
+  public T remove(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+    String old = storage.getItem(prefix + key);
+    if (old == null) {
+      return null;
+    }
+    storage.removeItem(prefix + key);
+    return codec.decode(old);
+  }
+
+  /** Returns the number of items of the map, enumerating the keys of the Storage. */
+  @Override
+  public int size() {
+    return itemKeys().size();
+  }
+
+  private List<String> itemKeys() {
+    List<String> keys = new ArrayList<String>();
+    int length = storage.getLength();
+    for (int i = 0; i < length; i++) {
+      String key = storage.key(i);
+      if (key != null && key.startsWith(prefix)) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A page of items returned by {@link Storage#scan(String, int, String)}.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ */
+public final class StoragePage {
+
+  private final Map<String, String> items;
+  private final String cursor;
+
+  StoragePage(Map<String, String> items, String cursor) {
+    this.items = Collections.unmodifiableMap(items);
+    this.cursor = cursor;
+  }
+
+  /**
+   * Returns the continuation token to pass to {@link Storage#scan(String, int, String)} for the
+   * next page.
+   *
+   * @return the token, or <code>null</code> if this is the last page
+   */
+  public String getCursor() {
+    return cursor;
+  }
+
+  /** Returns the items of this page, sorted by key. */
+  public Map<String, String> getItems() {
+    return items;
+  }
+
+  /** Returns <code>true</code> if there are items after this page. */
+  public boolean hasMore() {
+    return cursor != null;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a bulk write to a {@link Storage} fails part way, typically because the storage quota
+ * was exceeded.
+ *
+ * <p>Bulk writes are not transactional: the items written before the failure stay written (and
+ * their storage events are fired), the items after it were not attempted.
+ */
+public class StoragePartialWriteException extends RuntimeException {
+  private final List<String> writtenKeys;
+  private final String failedKey;
+
+  StoragePartialWriteException(List<String> writtenKeys, String failedKey, Throwable cause) {
+    super(
+        "Writing key "
+            + failedKey
+            + " failed after "
+            + writtenKeys.size()
+            + " items were written: "
+            + cause.getMessage(),
+        cause);
+    this.writtenKeys = Collections.unmodifiableList(writtenKeys);
+    this.failedKey = failedKey;
+  }
+
+  /** Returns the keys successfully written, in write order. */
+  public List<String> getWrittenKeys() {
+    return writtenKeys;
+  }
+
+  /** Returns the key whose write failed. */
+  public String getFailedKey() {
+    return failedKey;
+  }
+}
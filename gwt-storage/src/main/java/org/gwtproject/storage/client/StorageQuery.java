@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.gwtproject.core.client.Scheduler;
+
+/**
+ * Finds the items of a {@link Storage} matching predicates on their keys and values, reading as few
+ * values as possible.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The candidate keys are either all the keys of the Storage, enumerated once when the query
+ * starts matching, or the keys supplied by {@link #candidates(Iterable)}, typically looked up in a
+ * {@link StorageIndex} or a {@link SortedStorageMap} range. The key prefix and key filter are
+ * checked first, so that only the values of the remaining candidates are read and passed to the
+ * value filter. The query stops as soon as {@link #limit(int)} items matched.
+ *
+ * <p>{@link #list()} and {@link #findFirst()} run the query synchronously. {@link #run(Callback)}
+ * streams the matches to a callback in slices of a few milliseconds, scheduled incrementally, so
+ * that scanning a large Storage does not block the UI; items changed between two slices are seen
+ * in their latest state, and skipped if they were removed.
+ */
+public class StorageQuery {
+
+  /** Receives the items matched by {@link StorageQuery#run(Callback)}. */
+  public interface Callback {
+    /**
+     * Called for each matching item, in candidate order.
+     *
+     * @param key the key of the item
+     * @param value the value of the item
+     * @return <code>false</code> to stop the query
+     */
+    boolean onMatch(String key, String value);
+
+    /** Called once after the last match, when the query completed or was stopped. */
+    void onComplete();
+  }
+
+  // Time a query may spend per tick
+  private static final double SLICE_MILLIS = 4;
+
+  private final Storage storage;
+  private String keyPrefix;
+  private Predicate<String> keyFilter;
+  private Predicate<String> valueFilter;
+  private Iterable<String> candidates;
+  private int limit = Integer.MAX_VALUE;
+
+  /**
+   * Creates a query matching all the items of the given storage.
+   *
+   * @param storage the storage to query
+   */
+  public StorageQuery(Storage storage) {
+    assert storage != null : "storage cannot be null";
+    this.storage = storage;
+  }
+
+  /**
+   * Restricts the query to the specified keys, instead of enumerating all the keys of the Storage.
+   * Keys without an item are skipped.
+   *
+   * @param keys the candidate keys, in the order the matches are reported
+   * @return this query
+   */
+  public StorageQuery candidates(Iterable<String> keys) {
+    this.candidates = keys;
+    return this;
+  }
+
+  /**
+   * Restricts the query to the keys matching the specified predicate, checked before the value is
+   * read.
+   *
+   * @return this query
+   */
+  public StorageQuery keyFilter(Predicate<String> filter) {
+    this.keyFilter = filter;
+    return this;
+  }
+
+  /**
+   * Restricts the query to the keys starting with the specified prefix.
+   *
+   * @return this query
+   */
+  public StorageQuery keyPrefix(String prefix) {
+    this.keyPrefix = prefix;
+    return this;
+  }
+
+  /**
+   * Stops the query once the specified number of items matched.
+   *
+   * @return this query
+   */
+  public StorageQuery limit(int limit) {
+    assert limit > 0 : "limit must be positive";
+    this.limit = limit;
+    return this;
+  }
+
+  /**
+   * Restricts the query to the values matching the specified predicate.
+   *
+   * @return this query
+   */
+  public StorageQuery valueFilter(Predicate<String> filter) {
+    this.valueFilter = filter;
+    return this;
+  }
+
+  /**
+   * Returns the first matching item, reading values only until it is found.
+   *
+   * @return the first match, or <code>null</code> if no item matches
+   */
+  public Map.Entry<String, String> findFirst() {
+    final List<Map.Entry<String, String>> found = new ArrayList<Map.Entry<String, String>>(1);
+    new Execution(
+            new Callback() {
+              @Override
+              public boolean onMatch(String key, String value) {
+                found.add(new SimpleImmutableEntry<String, String>(key, value));
+                return false;
+              }
+
+              @Override
+              public void onComplete() {}
+            })
+        .advance(Double.POSITIVE_INFINITY);
+    return found.isEmpty() ? null : found.get(0);
+  }
+
+  /**
+   * Returns the matching items, up to the limit.
+   *
+   * @return the matches, in candidate order
+   */
+  public Map<String, String> list() {
+    final Map<String, String> items = new LinkedHashMap<String, String>();
+    new Execution(
+            new Callback() {
+              @Override
+              public boolean onMatch(String key, String value) {
+                items.put(key, value);
+                return true;
+              }
+
+              @Override
+              public void onComplete() {}
+            })
+        .advance(Double.POSITIVE_INFINITY);
+    return items;
+  }
+
+  /**
+   * Runs the query incrementally, in slices scheduled with {@link
+   * Scheduler#scheduleIncremental(Scheduler.RepeatingCommand)}, starting after the current task.
+   *
+   * @param callback the callback receiving the matches
+   */
+  public void run(Callback callback) {
+    final Execution execution = new Execution(callback);
+    Scheduler.get()
+        .scheduleIncremental(
+            new Scheduler.RepeatingCommand() {
+              @Override
+              public boolean execute() {
+                return execution.advance(StorageClock.now() + SLICE_MILLIS);
+              }
+            });
+  }
+
+  /*
+   * The state of a running query, whose settings are captured when it starts
+   */
+  private class Execution {
+    private final Callback callback;
+    private final String keyPrefix = StorageQuery.this.keyPrefix;
+    private final Predicate<String> keyFilter = StorageQuery.this.keyFilter;
+    private final Predicate<String> valueFilter = StorageQuery.this.valueFilter;
+    private final Iterable<String> candidates = StorageQuery.this.candidates;
+    private Iterator<String> keys;
+    private int remaining = limit;
+
+    Execution(Callback callback) {
+      this.callback = callback;
+    }
+
+    /*
+     * Matches candidates until the deadline, returning true if the query is not complete. The keys
+     * are enumerated by the first call, i.e. in the first slice of an incremental query.
+     */
+    boolean advance(double deadline) {
+      if (keys == null) {
+        keys = candidates != null ? candidates.iterator() : snapshotKeys();
+      }
+      while (keys.hasNext()) {
+        String key = keys.next();
+        if (matchesKey(key)) {
+          String value = storage.getItem(key);
+          if (value != null
+              && (valueFilter == null || valueFilter.test(value))
+              && (!callback.onMatch(key, value) || --remaining == 0)) {
+            break;
+          }
+        }
+        if (StorageClock.now() >= deadline) {
+          return true;
+        }
+      }
+      callback.onComplete();
+      return false;
+    }
+
+    private boolean matchesKey(String key) {
+      return key != null
+          && (keyPrefix == null || key.startsWith(keyPrefix))
+          && (keyFilter == null || keyFilter.test(key));
+    }
+
+    /*
+     * The keys are copied so that items added or removed during the query do not shift the
+     * enumeration; only those starting with the prefix are kept.
+     */
+    private Iterator<String> snapshotKeys() {
+      List<String> keys = new ArrayList<String>();
+      int length = storage.getLength();
+      for (int i = 0; i < length; i++) {
+        String key = storage.key(i);
+        // null if items were removed meanwhile, e.g. by a handler of the storage events
+        if (key != null && (keyPrefix == null || key.startsWith(keyPrefix))) {
+          keys.add(key);
+        }
+      }
+      return keys.iterator();
+    }
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.gwtproject.core.client.Scheduler;
+import org.gwtproject.event.shared.HandlerRegistration;
+
+/**
+ * Synchronizes the items of a {@link Storage} whose keys start with a prefix with a server, by
+ * exchanging deltas containing only the items changed since the last acknowledged synchronization.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ *
+ * <p>The keys changed by this window are tracked from the {@link StorageEvent}s and persisted under
+ * the sync name, after the current event loop task, so that changes made offline survive a reload.
+ * {@link #exportDelta(int)} encodes a batch of changed items, which remain dirty until the server
+ * confirms it with {@link #acknowledge()}; an item changed again while its batch is sent stays
+ * dirty. Until the first acknowledged synchronization, and after the Storage was cleared, the delta
+ * is a full snapshot of the items.
+ *
+ * <p>A delta is a positional array: a full-snapshot flag, then the keys, without the prefix, each
+ * followed by its value or <code>null</code> if the item was removed. Superseded changes are never
+ * sent, as only the current value of each dirty key is read. {@link #applyDelta(String)} applies a
+ * delta received from the server in bulk, with {@link Storage#putAll(Map)} and {@link
+ * Storage#removeAll(java.util.Collection)}, so that batch handlers are notified once; the server
+ * values win over unsent local changes of the same keys.
+ *
+ * <p>Only one window should synchronize a Storage at a time, e.g. an elected leader; changes made
+ * by other windows are not tracked.
+ */
+public class StorageSync {
+
+  private final Storage storage;
+  private final String name;
+  private final String keyPrefix;
+  private final HandlerRegistration registration;
+  // keys changed since the last acknowledged synchronization
+  private final Set<String> dirty = new LinkedHashSet<String>();
+  // keys of the delta awaiting acknowledgement, and the keys changed since it was exported
+  private List<String> inFlight;
+  private boolean inFlightFull;
+  private final Set<String> changedSinceExport = new HashSet<String>();
+  private boolean full;
+  private boolean clearedSinceExport;
+  private boolean applying;
+  private boolean writeScheduled;
+
+  /**
+   * Creates the synchronization of the items whose keys start with the specified prefix, resuming
+   * the tracking of dirty keys stored under that name if any.
+   *
+   * @param storage the storage holding the items
+   * @param name the name of the item holding the dirty keys; it must not start with <code>
+   *     keyPrefix</code>
+   * @param keyPrefix the prefix of the keys of the synchronized items
+   */
+  public StorageSync(Storage storage, String name, String keyPrefix) {
+    assert storage != null : "storage cannot be null";
+    assert !name.startsWith(keyPrefix) : "the sync name cannot start with the key prefix";
+    this.storage = storage;
+    this.name = name;
+    this.keyPrefix = keyPrefix;
+    load();
+    registration =
+        Storage.addStorageEventHandler(
+            new StorageEvent.Handler() {
+              @Override
+              public void onStorageChange(StorageEvent event) {
+                if (event.getStorageArea() == StorageSync.this.storage) {
+                  onChange(event.getKey());
+                }
+              }
+            });
+  }
+
+  /** Gives up on the last exported delta, whose items remain dirty. */
+  public void abort() {
+    inFlight = null;
+  }
+
+  /**
+   * Confirms that the server applied the last exported delta: its items are no longer dirty,
+   * unless they changed since it was exported.
+   */
+  public void acknowledge() {
+    assert inFlight != null : "no delta was exported";
+    if (inFlightFull) {
+      // the snapshot also covered the items removed before it
+      dirty.retainAll(changedSinceExport);
+      full = clearedSinceExport;
+    } else {
+      for (String key : inFlight) {
+        if (!changedSinceExport.contains(key)) {
+          dirty.remove(key);
+        }
+      }
+    }
+    inFlight = null;
+    write();
+  }
+
+  /**
+   * Applies a delta received from the server, without marking its items as dirty. After a full
+   * snapshot, the items are those of the server and none is dirty.
+   *
+   * @param delta a delta in the format produced by {@link #exportDelta(int)}
+   * @throws IllegalArgumentException if the delta is malformed
+   */
+  public void applyDelta(String delta) {
+    PositionalReader reader = new PositionalReader(delta);
+    reader.beginArray();
+    boolean snapshot = reader.readBoolean();
+    Map<String, String> writes = new LinkedHashMap<String, String>();
+    List<String> removals = new ArrayList<String>();
+    while (reader.hasNext()) {
+      String key = keyPrefix + reader.readString();
+      if (reader.readNull()) {
+        removals.add(key);
+      } else {
+        writes.put(key, reader.readString());
+      }
+    }
+    reader.endArray();
+    reader.end();
+    if (snapshot) {
+      // the items missing from the snapshot were removed
+      for (String key : keys()) {
+        if (!writes.containsKey(key)) {
+          removals.add(key);
+        }
+      }
+    }
+    applying = true;
+    try {
+      storage.putAll(writes);
+      storage.removeAll(removals);
+    } finally {
+      applying = false;
+    }
+    if (snapshot) {
+      dirty.clear();
+      full = false;
+    } else {
+      dirty.removeAll(writes.keySet());
+      dirty.removeAll(removals);
+    }
+    write();
+  }
+
+  /** Stops tracking changes, after storing the dirty keys. */
+  public void detach() {
+    write();
+    registration.removeHandler();
+  }
+
+  /**
+   * Encodes the next batch of changed items, which must then be either acknowledged or aborted.
+   *
+   * <p>The first delta is a full snapshot, which replaces the items of the server: unless the items
+   * of this Storage are authoritative, first apply a snapshot received from the server.
+   *
+   * @param maxItems the maximum number of items of the delta, ignored for a full snapshot
+   * @return the delta, or <code>null</code> if no item changed
+   * @throws IllegalStateException if the previous delta was neither acknowledged nor aborted
+   */
+  public String exportDelta(int maxItems) {
+    if (inFlight != null) {
+      throw new IllegalStateException("the previous delta was not acknowledged");
+    }
+    List<String> keys = new ArrayList<String>();
+    if (full) {
+      keys.addAll(keys());
+    } else {
+      for (String key : dirty) {
+        if (keys.size() == maxItems) {
+          break;
+        }
+        keys.add(key);
+      }
+      if (keys.isEmpty()) {
+        return null;
+      }
+    }
+    PositionalWriter writer = new PositionalWriter().beginArray().writeBoolean(full);
+    for (String key : keys) {
+      writer.writeString(key.substring(keyPrefix.length()));
+      String value = storage.getItem(key);
+      if (value == null) {
+        writer.writeNull();
+      } else {
+        writer.writeString(value);
+      }
+    }
+    inFlight = keys;
+    inFlightFull = full;
+    changedSinceExport.clear();
+    clearedSinceExport = false;
+    return writer.endArray().toString();
+  }
+
+  /** Returns the number of items changed since the last acknowledged synchronization. */
+  public int getDirtyCount() {
+    return dirty.size();
+  }
+
+  /**
+   * Returns <code>true</code> if the next delta is a full snapshot, until the first acknowledged
+   * synchronization and after the Storage was cleared.
+   */
+  public boolean isFullSyncPending() {
+    return full;
+  }
+
+  private List<String> keys() {
+    List<String> keys = new ArrayList<String>();
+    int length = storage.getLength();
+    for (int i = 0; i < length; i++) {
+      String key = storage.key(i);
+      if (key.startsWith(keyPrefix)) {
+        keys.add(key);
+      }
+    }
+    return keys;
+  }
+
+  private void load() {
+    String stored = storage.getItem(name);
+    if (stored == null) {
+      full = true;
+      return;
+    }
+    PositionalReader reader = new PositionalReader(stored);
+    reader.beginArray();
+    full = reader.readBoolean();
+    while (reader.hasNext()) {
+      dirty.add(reader.readString());
+    }
+    reader.endArray();
+    reader.end();
+  }
+
+  private void onChange(String key) {
+    if (applying) {
+      return;
+    }
+    if (key == null) {
+      // the Storage was cleared, with the dirty keys
+      dirty.clear();
+      full = true;
+      clearedSinceExport = true;
+    } else if (key.startsWith(keyPrefix)) {
+      dirty.add(key);
+      changedSinceExport.add(key);
+    } else {
+      return;
+    }
+    scheduleWrite();
+  }
+
+  private void write() {
+    PositionalWriter writer = new PositionalWriter().beginArray().writeBoolean(full);
+    for (String key : dirty) {
+      writer.writeString(key);
+    }
+    storage.setItem(name, writer.endArray().toString());
+  }
+
+  private void scheduleWrite() {
+    if (writeScheduled) {
+      return;
+    }
+    writeScheduled = true;
+    Scheduler.get()
+        .scheduleDeferred(
+            new Scheduler.ScheduledCommand() {
+              @Override
+              public void execute() {
+                writeScheduled = false;
+                write();
+              }
+            });
+  }
+}
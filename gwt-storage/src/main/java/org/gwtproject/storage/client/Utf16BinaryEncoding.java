@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * Encodes binary data into strings packing 15 bits in each UTF-16 code unit.
+ *
+ * <p>Web Storage quotas count UTF-16 code units, so base64 costs 4/3 code units (2.67 bytes of
+ * quota) per byte, while this encoding costs 8/15 code units (1.07 bytes of quota) per byte.
+ *
+ * <p>Each code unit holds 15 bits mapped to the range <code>U+1000..U+8FFF</code>, so the encoded
+ * strings never contain surrogates (which storage implementations may not preserve when unpaired)
+ * nor control characters. The last code unit tells how many padding bits complete the previous
+ * one, so the byte length need not be known before encoding: see {@link Encoder}.
+ */
+public final class Utf16BinaryEncoding {
+
+  private static final int BITS = 15;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final int OFFSET = 0x1000;
+
+  private Utf16BinaryEncoding() {}
+
+  /**
+   * Returns the number of code units of the encoding of the given number of bytes.
+   *
+   * @param byteLength a number of bytes
+   */
+  public static int encodedLength(int byteLength) {
+    return (int) ((byteLength * 8L + BITS - 1) / BITS) + 1;
+  }
+
+  /**
+   * Encodes the given bytes.
+   *
+   * @param bytes the bytes to encode
+   * @return the encoded string
+   */
+  public static String encode(byte[] bytes) {
+    Encoder encoder = new Encoder(new StringBuilder(encodedLength(bytes.length)));
+    encoder.write(bytes, 0, bytes.length);
+    return encoder.finish().toString();
+  }
+
+  /**
+   * Decodes a string produced by {@link #encode(byte[])} or an {@link Encoder}.
+   *
+   * @param encoded the encoded string
+   * @return the decoded bytes
+   * @throws IllegalArgumentException if the string is not a valid encoding
+   */
+  public static byte[] decode(String encoded) {
+    int dataLength = encoded.length() - 1;
+    int padding = dataLength < 0 ? -1 : encoded.charAt(dataLength) - OFFSET;
+    long bitLength = (long) dataLength * BITS - padding;
+    if (padding < 0 || padding >= BITS || bitLength < 0 || bitLength % 8 != 0) {
+      throw new IllegalArgumentException("Invalid encoded binary value");
+    }
+
+    byte[] bytes = new byte[(int) (bitLength / 8)];
+    int accumulator = 0;
+    int accumulatedBits = 0;
+    int length = 0;
+    for (int i = 0; i < dataLength; i++) {
+      int value = encoded.charAt(i) - OFFSET;
+      if (value < 0 || value > MASK) {
+        throw new IllegalArgumentException("Invalid encoded binary value at " + i);
+      }
+      accumulator = (accumulator << BITS) | value;
+      accumulatedBits += BITS;
+      while (accumulatedBits >= 8 && length < bytes.length) {
+        accumulatedBits -= 8;
+        bytes[length++] = (byte) (accumulator >>> accumulatedBits);
+        accumulator &= (1 << accumulatedBits) - 1;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Encodes bytes incrementally into a {@link StringBuilder}, so that large binary values can be
+   * encoded as they are produced.
+   */
+  public static final class Encoder {
+    private final StringBuilder out;
+    private int accumulator;
+    private int accumulatedBits;
+    private boolean finished;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param out the builder the encoded code units are appended to
+     */
+    public Encoder(StringBuilder out) {
+      this.out = out;
+    }
+
+    /**
+     * Encodes a portion of an array of bytes.
+     *
+     * @return this encoder
+     */
+    public Encoder write(byte[] bytes, int offset, int length) {
+      assert !finished : "encoder is finished";
+      for (int i = offset; i < offset + length; i++) {
+        accumulator = (accumulator << 8) | (bytes[i] & 0xFF);
+        accumulatedBits += 8;
+        if (accumulatedBits >= BITS) {
+          accumulatedBits -= BITS;
+          out.append((char) (OFFSET + (accumulator >>> accumulatedBits)));
+          accumulator &= (1 << accumulatedBits) - 1;
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Encodes the remaining bits and the padding marker. The encoder cannot be used afterwards.
+     *
+     * @return the builder holding the complete encoding
+     */
+    public StringBuilder finish() {
+      assert !finished : "encoder is finished";
+      finished = true;
+      int padding = 0;
+      if (accumulatedBits > 0) {
+        padding = BITS - accumulatedBits;
+        out.append((char) (OFFSET + (accumulator << padding)));
+      }
+      return out.append((char) (OFFSET + padding));
+    }
+  }
+}
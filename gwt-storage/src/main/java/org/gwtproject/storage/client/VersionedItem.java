@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 The GWT Project Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gwtproject.storage.client;
+
+/**
+ * A value stored with a version number, as read by {@link Storage#getVersionedItem(String)} and
+ * written by {@link Storage#compareAndSet(String, int, String)}.
+ *
+ * <p>The version is incremented by each successful compare-and-set, so a window can read an item,
+ * compute its new value, and write it only if no other window wrote the item in the meantime. The
+ * version is stored in front of the value, so the items written by compare-and-set must only be
+ * read through this class. Items set with {@link Storage#setItem(String, String)} have the version
+ * 0.
+ *
+ * <p><span style="color:red">Experimental API: This API is still under development and is subject
+ * to change. </span>
+ */
+public final class VersionedItem {
+
+  private static final String VERSION_PREFIX = "\u0000s";
+
+  /**
+   * Decodes a stored item, e.g. the old or new value of a {@link StorageEvent}.
+   *
+   * @param item the stored item, or <code>null</code>
+   * @return the versioned item, or <code>null</code> if <code>item</code> is <code>null</code>
+   */
+  public static VersionedItem fromItem(String item) {
+    if (item == null) {
+      return null;
+    }
+    if (!item.startsWith(VERSION_PREFIX)) {
+      return new VersionedItem(item, 0);
+    }
+    int colon = item.indexOf(':');
+    return new VersionedItem(
+        item.substring(colon + 1),
+        Integer.parseInt(item.substring(VERSION_PREFIX.length(), colon)));
+  }
+
+  static String toItem(String value, int version) {
+    return VERSION_PREFIX + version + ":" + value;
+  }
+
+  private final String value;
+  private final int version;
+
+  private VersionedItem(String value, int version) {
+    this.value = value;
+    this.version = version;
+  }
+
+  /** Returns the value of the item. */
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the version of the item, to pass to {@link Storage#compareAndSet(String, int, String)}.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  @Override
+  public String toString() {
+    return version + ":" + value;
+  }
+}